@@ -109,80 +109,116 @@ public class EditFlightActivity extends AppCompatActivity {
    *
    *    We replace an empty field with our new flight information.
    *    If there exists information we replace is with our new flight information.
+   *    Every field is checked before the flight is changed, so a field that isn't valid leaves
+   *    the flight as it was and is marked with an error.
    *    @param view the view of the section
    */
   public void changeFlightInfo(View view) {
-    // we create a EditText to individually edit the flight number field of EditFlightActivity
-    EditText editInfo = (EditText) findViewById(R.id.edit_flight_number);
-    // we convert our editInfo into a string
-    String newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new flight number
-    if (!newInfo.isEmpty()) {
-      this.flight.setFlightnum(newInfo);
-    }
-    // we create a EditText to individually edit the departure date and time field of
-    // EditFlightActivity
-    editInfo = (EditText) findViewById(R.id.edit_departure_date_time);
-    newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new departure time
-    if (!newInfo.isEmpty()) {
-      this.flight.setDepartureDateTime(newInfo);
-    }
-    // we create a EditText to individually edit the arrival date and time field of
-    // EditFlightActivity
-    editInfo = (EditText) findViewById(R.id.edit_arrival_date_time);
-    newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new arrival date time
-    if (!newInfo.isEmpty()) {
-      this.flight.setArrivalDateTime(newInfo);
-    }
-    editInfo = (EditText) findViewById(R.id.edit_airline_name);
-    newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new airline name
-    if (!newInfo.isEmpty()) {
-      this.flight.setAirline(newInfo);
-    }
-    // we create a EditText to individually edit the origin field of EditFlightActivity
-    editInfo = (EditText) findViewById(R.id.edit_origin);
-    newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new origin
-    if (!newInfo.isEmpty()) {
-      this.flight.setOrigin(newInfo);
-    }
-    // we create a EditText to individually edit the destination field of EditFlightActivity
-    editInfo = (EditText) findViewById(R.id.edit_destination);
-    newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new destination
-    if (!newInfo.isEmpty()) {
-      this.flight.setDestination(newInfo);
-    }
-    // we create a EditText to individually edit the cost field of EditFlightActivity
-    editInfo = (EditText) findViewById(R.id.edit_cost);
-    newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new cost
-    if (!newInfo.isEmpty()) {
-      this.flight.setCost(Double.valueOf(newInfo));
-    }
-    // we create a EditText to individually edit the travel time field of EditFlightActivity
-    editInfo = (EditText) findViewById(R.id.edit_travel_time);
-    newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new travel time
-    if (!newInfo.isEmpty()) {
-      this.flight.setTraveltime(Double.parseDouble(newInfo));
-    }
-    // we create a EditText to individually edit the number of seats available field of
-    // EditFlightActivity
-    editInfo = (EditText) findViewById(R.id.edit_seats_available);
-    newInfo = editInfo.getText().toString();
-    // if the field is empty we automatically replace it with our new number of seats
-    if (!newInfo.isEmpty()) {
-      this.flight.setNumSeats(Integer.parseInt(newInfo));
+    // read every field first, so nothing is changed unless all of them are valid
+    EditText flightNumText = (EditText) findViewById(R.id.edit_flight_number);
+    EditText departureText = (EditText) findViewById(R.id.edit_departure_date_time);
+    EditText arrivalText = (EditText) findViewById(R.id.edit_arrival_date_time);
+    EditText costText = (EditText) findViewById(R.id.edit_cost);
+    EditText travelTimeText = (EditText) findViewById(R.id.edit_travel_time);
+    EditText seatsText = (EditText) findViewById(R.id.edit_seats_available);
+    String flightNum = flightNumText.getText().toString();
+    String departure = departureText.getText().toString();
+    String arrival = arrivalText.getText().toString();
+    String airline = ((EditText) findViewById(R.id.edit_airline_name)).getText().toString();
+    String origin = ((EditText) findViewById(R.id.edit_origin)).getText().toString();
+    String destination = ((EditText) findViewById(R.id.edit_destination)).getText().toString();
+
+    // a new flight number can't be the number of another flight, since adding the flight back
+    // would overwrite that flight
+    if (!flightNum.isEmpty() && !flightNum.equals(this.flight.getFlightnum())
+            && this.flightDatabase.contains(flightNum)) {
+      flightNumText.setError("Another flight already has this flight number.");
+      return;
+    }
+    // the dates and times must be in the format YYYY-MM-DD hh:mm
+    if (!departure.isEmpty() && !isDateTime(departure)) {
+      departureText.setError("The date and time must be in the format YYYY-MM-DD hh:mm.");
+      return;
+    }
+    if (!arrival.isEmpty() && !isDateTime(arrival)) {
+      arrivalText.setError("The date and time must be in the format YYYY-MM-DD hh:mm.");
+      return;
+    }
+    // parse the numbers
+    Double cost = null;
+    Double travelTime = null;
+    Integer seats = null;
+    try {
+      if (!costText.getText().toString().isEmpty()) {
+        cost = Double.valueOf(costText.getText().toString());
+      }
+    } catch (NumberFormatException e) {
+      costText.setError("The cost must be a number.");
+      return;
+    }
+    try {
+      if (!travelTimeText.getText().toString().isEmpty()) {
+        travelTime = Double.valueOf(travelTimeText.getText().toString());
+      }
+    } catch (NumberFormatException e) {
+      travelTimeText.setError("The travel time must be a number.");
+      return;
+    }
+    try {
+      if (!seatsText.getText().toString().isEmpty()) {
+        seats = Integer.valueOf(seatsText.getText().toString());
+      }
+    } catch (NumberFormatException e) {
+      seatsText.setError("The number of seats must be a whole number.");
+      return;
     }
 
+    // take the flight out of the database while it is edited so that it is re-indexed under its
+    // new flight number, route and departure date when it is added back
+    this.flightDatabase.removeItem(this.flight);
+    // if a field is empty we keep the old information, otherwise we replace it
+    if (!flightNum.isEmpty()) {
+      this.flight.setFlightnum(flightNum);
+    }
+    if (!departure.isEmpty()) {
+      this.flight.setDepartureDateTime(departure);
+    }
+    if (!arrival.isEmpty()) {
+      this.flight.setArrivalDateTime(arrival);
+    }
+    if (!airline.isEmpty()) {
+      this.flight.setAirline(airline);
+    }
+    if (!origin.isEmpty()) {
+      this.flight.setOrigin(origin);
+    }
+    if (!destination.isEmpty()) {
+      this.flight.setDestination(destination);
+    }
+    if (cost != null) {
+      this.flight.setCost(cost);
+    }
+    if (travelTime != null) {
+      this.flight.setTraveltime(travelTime);
+    }
+    if (seats != null) {
+      this.flight.setNumSeats(seats);
+    }
+    this.flightDatabase.addItem(this.flight);
     this.flightDatabase.save();
 
     Intent newIntent = new Intent(this, EditInfoActivity.class);
     newIntent.putExtra("userKey", this.user);
     startActivity(newIntent);
   }
+
+  /**
+   * Returns true if the given string is a date and time in the format YYYY-MM-DD hh:mm.
+   *
+   * @param dateTime the string to check.
+   * @return true if the string is a date and time in the format YYYY-MM-DD hh:mm.
+   */
+  private static boolean isDateTime(String dateTime) {
+    return dateTime.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}");
+  }
 }
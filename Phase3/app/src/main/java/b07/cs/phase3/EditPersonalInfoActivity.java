@@ -124,6 +124,16 @@ public class EditPersonalInfoActivity extends AppCompatActivity {
       this.selected = 0;
     }
 
+    // the users are kept by email, so a new email can't be the email of another user, since
+    // re-indexing the user would overwrite that user
+    EditText emailText = (EditText) findViewById(R.id.edit_email);
+    String newEmail = emailText.getText().toString();
+    if (!newEmail.isEmpty() && !newEmail.equals(this.userArr.get(selected).getEmail())
+            && this.userDatabase.contains(newEmail)) {
+      emailText.setError("Another user already has this email.");
+      return;
+    }
+
     // edit and save
     EditText editInfo = (EditText) findViewById(R.id.edit_first_name);
     String newInfo = editInfo.getText().toString();
@@ -135,10 +145,9 @@ public class EditPersonalInfoActivity extends AppCompatActivity {
     if (!newInfo.isEmpty()) {
       this.userArr.get(selected).setLastName(newInfo);
     }
-    editInfo = (EditText) findViewById(R.id.edit_email);
-    newInfo = editInfo.getText().toString();
-    if (!newInfo.isEmpty()) {
-      this.userArr.get(selected).setEmail(newInfo);
+    if (!newEmail.isEmpty()) {
+      // re-index the user under the new email without moving it in the database
+      this.userDatabase.changeEmail(this.userArr.get(selected), newEmail);
     }
     editInfo = (EditText) findViewById(R.id.edit_address);
     newInfo = editInfo.getText().toString();
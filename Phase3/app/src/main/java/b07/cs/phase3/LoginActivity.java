@@ -15,6 +15,7 @@ import backend.Admin;
 import backend.User;
 import databases.FlightDatabase;
 import databases.UserDatabase;
+import search.SearchResultStore;
 
 import java.io.File;
 import java.io.IOException;
@@ -48,6 +49,8 @@ public class LoginActivity extends AppCompatActivity {
 
     // add admins on a fresh install
     this.addAdmins();
+    // a new session starts, so drop the search results of the previous one
+    SearchResultStore.clearAll();
   }
 
   @Override
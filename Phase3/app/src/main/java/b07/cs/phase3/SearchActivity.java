@@ -167,8 +167,8 @@ public class SearchActivity extends AppCompatActivity {
             && !destination.isEmpty()) {
       user.clearItineraries();
       user.getItineraries(departure_date, origin, destination);
+      // the itineraries are kept for this session only, so there is nothing to save
       if (!user.getItineraryListAsList().isEmpty()) {
-        this.userDatabase.save();
         return true;
       } else {
         resText.setText("No itineraries were found according to your search preferences.");
@@ -53,14 +53,15 @@ public class Admin extends User {
         // create the new client
         Client newClient = new Client(clientInfo[0], clientInfo[1], clientInfo[2],
                 clientInfo[3], clientInfo[4], clientInfo[5]);
-        // add the new client to this database and save
+        // add the new client to this database
         Admin.userDatabase.addItem(newClient);
-        Admin.userDatabase.save();
         // add the string rep of the client to the recent upload var
         uploaded += newClient.toString() + "\n";
       }
       // close the scanner
       sc.close();
+      // save the database once all the clients are added
+      Admin.userDatabase.save();
       // return the uploaded str
       return uploaded;
     } catch (FileNotFoundException e) {
@@ -95,13 +96,14 @@ public class Admin extends User {
         // create the new admin
         Admin newAdmin = new Admin(adminInfo[0], adminInfo[1], adminInfo[2],
                 adminInfo[3], adminInfo[4], adminInfo[5]);
-        // add the new admin to this database and save
+        // add the new admin to this database
         Admin.userDatabase.addItem(newAdmin);
-        Admin.userDatabase.save();
         uploaded += newAdmin.toString() + "\n";
       }
       // close the scanner
       sc.close();
+      // save the database once all the admins are added
+      Admin.userDatabase.save();
       // return the string rep of the uploaded admins.
       return uploaded;
     } catch (FileNotFoundException e) {
@@ -140,14 +142,15 @@ public class Admin extends User {
                 flightInfo[3], flightInfo[4],
                 flightInfo[5], Double.parseDouble(flightInfo[6]),
                 Integer.parseInt(flightInfo[7]));
-        // add it to the database and save it
+        // add it to the database
         Admin.flightDatabase.addItem(newFlight);
-        Admin.flightDatabase.save();
         // concat the new flight string rep to the recent upload var
         uploaded += newFlight.toString();
       }
       // close the scanner
       sc.close();
+      // save the database once all the flights are added
+      Admin.flightDatabase.save();
       // return the str rep of the uploaded admins
       return uploaded;
     } catch (FileNotFoundException e) {
@@ -1,7 +1,8 @@
 package backend;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.Calendar;
 
 /**
  * A Flight that contains flight information.
@@ -10,6 +11,9 @@ import java.util.Calendar;
  */
 public class Flight implements Serializable {
 
+  // the number of minutes in a day
+  private static final long MINUTES_PER_DAY = 24 * 60;
+
   private String flightnum;
   private String departureDateTime;
   private String arrivalDateTime;
@@ -20,6 +24,15 @@ public class Flight implements Serializable {
   private double cost;
   private int numSeats;
   private int bookedSeats;
+  // the ids of the origin and destination, given by the flight database the flight is put in so
+  // searches can compare airports without comparing strings. They aren't saved
+  private transient int originId = -1;
+  private transient int destinationId = -1;
+  // the departure and arrival in minutes since the start of 1970, parsed from the date and time
+  // strings when the flight is created or loaded and whenever they change. They aren't saved,
+  // since flights loaded from json skip the constructor and are parsed by whoever loads them
+  private transient long departureMinutes;
+  private transient long arrivalMinutes;
 
   /**
    * Creates a new flight given the flight number, departure date and time, arrival date and time,
@@ -45,13 +58,10 @@ public class Flight implements Serializable {
     this.cost = cost;
     this.numSeats = numSeats;
     this.bookedSeats = 0;
+    this.parseTimes();
 
-    Calendar date1 = createNewCalendar(departureDateTime);
-    Calendar date2 = createNewCalendar(arrivalDateTime);
-    // get the difference in time in milliseconds
-    double timeDifference = date2.getTimeInMillis() - date1.getTimeInMillis();
-    // convert to hours
-    this.traveltime = timeDifference / (1000 * 60 * 60);
+    // get the difference in time in minutes and convert to hours
+    this.traveltime = (this.arrivalMinutes - this.departureMinutes) / 60.0;
 
   }
 
@@ -81,6 +91,7 @@ public class Flight implements Serializable {
    */
   public void setDepartureDateTime(String departureDateTime) {
     this.departureDateTime = departureDateTime;
+    this.departureMinutes = minutesOf(departureDateTime);
   }
 
   /**
@@ -95,6 +106,7 @@ public class Flight implements Serializable {
    */
   public void setArrivalDateTime(String arrivalDateTime) {
     this.arrivalDateTime = arrivalDateTime;
+    this.arrivalMinutes = minutesOf(arrivalDateTime);
   }
 
   /**
@@ -123,6 +135,8 @@ public class Flight implements Serializable {
    */
   public void setOrigin(String origin) {
     this.origin = origin;
+    // the id is given again when the flight is put back in the database
+    this.originId = -1;
   }
 
   /**
@@ -137,6 +151,40 @@ public class Flight implements Serializable {
    */
   public void setDestination(String destination) {
     this.destination = destination;
+    // the id is given again when the flight is put back in the database
+    this.destinationId = -1;
+  }
+
+  /**
+   * Returns the id of the origin of this flight. The id is only meaningful for flights that
+   * are in a flight database.
+   *
+   * @return the id of the origin of this flight.
+   */
+  public int getOriginId() {
+    return originId;
+  }
+
+  /**
+   * Returns the id of the destination of this flight. The id is only meaningful for flights
+   * that are in a flight database.
+   *
+   * @return the id of the destination of this flight.
+   */
+  public int getDestinationId() {
+    return destinationId;
+  }
+
+  /**
+   * Sets the ids of the origin and destination of this flight. This should only be called by
+   * the flight database.
+   *
+   * @param originId      the id of the origin.
+   * @param destinationId the id of the destination.
+   */
+  public void setAirportIds(int originId, int destinationId) {
+    this.originId = originId;
+    this.destinationId = destinationId;
   }
 
   /**
@@ -186,24 +234,94 @@ public class Flight implements Serializable {
   }
 
   /**
-   * Create a new calendar object given the date and time and return it.
+   * Returns the number of minutes from the start of 1970 to the given date and time. The date
+   * and time are taken as they are written, without a time zone.
    *
    * @param dateAndTime the date and time in the format YYYY-MM-DD hh:mm.
+   * @return the number of minutes since the start of 1970.
    */
-  private Calendar createNewCalendar(String dateAndTime) {
-    // initiate a calendar
-    Calendar calendar = Calendar.getInstance();
-    // take the given dateandTime string and split it into the different values
+  public static long minutesOf(String dateAndTime) {
+    // take the given date and time string and split it into the different values
     String date = dateAndTime.split(" ")[0];
     String time = dateAndTime.split(" ")[1];
     int year = Integer.valueOf(date.split("-")[0]);
-    int month = Integer.valueOf(date.split("-")[1]) - 1;
+    int month = Integer.valueOf(date.split("-")[1]);
     int day = Integer.valueOf(date.split("-")[2]);
     int hour = Integer.valueOf(time.split(":")[0]);
     int min = Integer.valueOf(time.split(":")[1]);
-    // set the calendar to the wanted values
-    calendar.set(year, month, day, hour, min);
-    return calendar;
+    // count the days since 1970-01-01 (using March as the first month of the year, so the leap
+    // day is the last day of the year)
+    int y = month <= 2 ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    long days = era * 146097L + dayOfEra - 719468;
+    return days * MINUTES_PER_DAY + hour * 60 + min;
+  }
+
+  /**
+   * Returns the date the given number of minutes from the start of 1970 falls on. This undoes
+   * {@link #minutesOf(String)} for the date.
+   *
+   * @param minutes the number of minutes since the start of 1970.
+   * @return the date (in the format YYYY-MM-DD).
+   */
+  public static String dateOf(long minutes) {
+    // count the days since 1970-01-01, rounding down for times before it
+    long days = minutes >= 0 ? minutes / MINUTES_PER_DAY
+            : (minutes - MINUTES_PER_DAY + 1) / MINUTES_PER_DAY;
+    // turn the days into a year, month and day (using March as the first month of the year)
+    long shifted = days + 719468;
+    long era = (shifted >= 0 ? shifted : shifted - 146096) / 146097;
+    long dayOfEra = shifted - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+    long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    return String.format("%04d-%02d-%02d", year, month, day);
+  }
+
+  /**
+   * Parses the departure and arrival date and time of this flight into minutes. Flights parse
+   * their times when they are created, so this only needs to be called for flights loaded from
+   * json, which skip the constructor.
+   */
+  public void parseTimes() {
+    this.departureMinutes = minutesOf(this.departureDateTime);
+    this.arrivalMinutes = minutesOf(this.arrivalDateTime);
+  }
+
+  /**
+   * Reads this flight and parses its times, since deserialization skips the constructor.
+   *
+   * @param in the stream to read the flight from.
+   * @throws IOException            if the flight can't be read.
+   * @throws ClassNotFoundException if the class of a field can't be found.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.parseTimes();
+  }
+
+  /**
+   * Returns the departure date and time of this flight in minutes since the start of 1970.
+   *
+   * @return the departure date and time of this flight in minutes.
+   */
+  public long getDepartureMinutes() {
+    return this.departureMinutes;
+  }
+
+  /**
+   * Returns the arrival date and time of this flight in minutes since the start of 1970.
+   *
+   * @return the arrival date and time of this flight in minutes.
+   */
+  public long getArrivalMinutes() {
+    return this.arrivalMinutes;
   }
 
   /**
@@ -213,12 +331,8 @@ public class Flight implements Serializable {
    * @return the wait time between this flight and the given flight.
    */
   public double getWaitTime(Flight flight2) {
-    Calendar date1 = createNewCalendar(arrivalDateTime);
-    Calendar date2 = createNewCalendar(flight2.getDepartureDateTime());
-    // get the difference in time in milliseconds
-    double timeDifference = date2.getTimeInMillis() - date1.getTimeInMillis();
-    // convert to hours
-    return timeDifference / (1000 * 60 * 60);
+    // get the difference in time in minutes and convert to hours
+    return (flight2.getDepartureMinutes() - this.getArrivalMinutes()) / 60.0;
   }
 
   /**
@@ -226,7 +340,7 @@ public class Flight implements Serializable {
    *
    * @return true if every flight in the itinerary has room.
    */
-  protected boolean isfull() {
+  public boolean isfull() {
     return this.numSeats == this.bookedSeats;
   }
 
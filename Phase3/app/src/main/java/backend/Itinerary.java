@@ -1,17 +1,30 @@
 package backend;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Calendar;
 
 /**
- * An Itinerary that consists of one or more flights.
+ * An Itinerary that consists of one or more flights. The total cost and travel time are kept
+ * as flights are added, so they assume the cost and times of a flight don't change once it is
+ * part of an itinerary.
  *
  * @author Vinoshan Tharmalenkam
  */
 public class Itinerary implements Serializable {
 
+  // the shortest and longest wait times (in hours) allowed between two consecutive flights
+  public static final double MIN_WAIT_TIME = 0.5;
+  public static final double MAX_WAIT_TIME = 6;
+
   private ArrayList<Flight> flights;
+  // the total cost, first departure and last arrival (in minutes) of the flights, kept up to
+  // date as flights are added. They aren't saved, so they are worked out again when the
+  // itinerary is loaded
+  private transient double totalCost;
+  private transient long firstDepartureMinutes;
+  private transient long lastArrivalMinutes;
 
   /**
    * Creates a new Itinerary.
@@ -28,6 +41,7 @@ public class Itinerary implements Serializable {
   public Itinerary(ArrayList<Flight> flights) {
     this.flights = new ArrayList<Flight>();
     this.flights.addAll(flights);
+    this.computeTotals();
   }
 
   /**
@@ -37,6 +51,43 @@ public class Itinerary implements Serializable {
    */
   public void addFlight(Flight flight) {
     this.flights.add(flight);
+    // add the flight to the totals
+    if (this.flights.size() == 1) {
+      this.firstDepartureMinutes = flight.getDepartureMinutes();
+    }
+    this.totalCost += flight.getCost();
+    this.lastArrivalMinutes = flight.getArrivalMinutes();
+  }
+
+  /**
+   * Works out the total cost, first departure and last arrival of the flights again. Itineraries
+   * keep them up to date as flights are added, so this only needs to be called for itineraries
+   * loaded from json, which skip the constructor.
+   */
+  public void computeTotals() {
+    this.totalCost = 0;
+    this.firstDepartureMinutes = 0;
+    this.lastArrivalMinutes = 0;
+    for (Flight flight : this.flights) {
+      this.totalCost += flight.getCost();
+    }
+    if (!this.flights.isEmpty()) {
+      this.firstDepartureMinutes = this.flights.get(0).getDepartureMinutes();
+      this.lastArrivalMinutes = this.flights.get(this.flights.size() - 1).getArrivalMinutes();
+    }
+  }
+
+  /**
+   * Reads this itinerary and works out its totals, since deserialization skips the constructor.
+   * The flights parse their own times as they are read.
+   *
+   * @param in the stream to read the itinerary from.
+   * @throws IOException            if the itinerary can't be read.
+   * @throws ClassNotFoundException if the class of a field can't be found.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.computeTotals();
   }
 
   /**
@@ -54,11 +105,7 @@ public class Itinerary implements Serializable {
    * @return the total cost of the itinerary.
    */
   public double getTotalCost() {
-    double costs = 0;
-    for (Flight flight : flights) {
-      costs += flight.getCost();
-    }
-    return costs;
+    return this.totalCost;
   }
 
   /**
@@ -67,13 +114,17 @@ public class Itinerary implements Serializable {
    * @return the total travel time of all flights in the itinerary in hours.
    */
   public double totalTravelTime() {
-    Calendar date1 = createNewCalendar(getFirstDepartureDateTime());
-    Calendar date2 = createNewCalendar(getLastArrivalDateTime());
-    // get the difference in time in milliseconds
-    double timeDifference = date2.getTimeInMillis() - date1.getTimeInMillis();
-    // convert to hours
-    return timeDifference / (1000 * 60 * 60);
+    // get the difference in time in minutes and convert to hours
+    return this.totalTravelMinutes() / 60.0;
+  }
 
+  /**
+   * Returns the total travel time of all flights in the itinerary in minutes.
+   *
+   * @return the total travel time of all flights in the itinerary in minutes.
+   */
+  public long totalTravelMinutes() {
+    return this.lastArrivalMinutes - this.firstDepartureMinutes;
   }
 
   /**
@@ -146,7 +197,9 @@ public class Itinerary implements Serializable {
   }
 
   /**
-   * Returns the flights in this itinerary.
+   * Returns the flights in this itinerary. Add flights with {@link #addFlight(Flight)}, which
+   * keeps the totals up to date. If the list is changed directly, call
+   * {@link #computeTotals()} afterwards.
    *
    * @return the flights in this itinerary.
    */
@@ -155,24 +208,24 @@ public class Itinerary implements Serializable {
   }
 
   /**
-   * Create a new calendar object given the date and time and return it.
+   * Returns true if the second flight can follow the first flight in an itinerary. That is,
+   * the second flight departs from where the first flight arrives, and the wait time between
+   * them is between 0.5 and 6 hours.
    *
-   * @param dateAndTime the date and time in the format YYYY-MM-DD hh:mm.
+   * @param flight1 the earlier flight.
+   * @param flight2 the later flight.
+   * @return true if the second flight can follow the first flight in an itinerary.
    */
-  private Calendar createNewCalendar(String dateAndTime) {
-    // initiate a calendar
-    Calendar calendar = Calendar.getInstance();
-    // take the given dateandTime string and split it into the different values
-    String date = dateAndTime.split(" ")[0];
-    String time = dateAndTime.split(" ")[1];
-    int year = Integer.valueOf(date.split("-")[0]);
-    int month = Integer.valueOf(date.split("-")[1]) - 1;
-    int day = Integer.valueOf(date.split("-")[2]);
-    int hour = Integer.valueOf(time.split(":")[0]);
-    int min = Integer.valueOf(time.split(":")[1]);
-    // set the calendar to the wanted values
-    calendar.set(year, month, day, hour, min);
-    return calendar;
+  public static boolean isValidConnection(Flight flight1, Flight flight2) {
+    // the second flight has to leave from where the first one lands
+    if (!flight1.getDestination().equals(flight2.getOrigin())) {
+      return false;
+    }
+    // get the wait time between these 2 flights
+    double waittime = flight1.getWaitTime(flight2);
+    // if wait time is more than 6 (too long) or less than 0.5 (second flight already departed)
+    // then the connection is invalid
+    return (waittime <= MAX_WAIT_TIME) && (waittime >= MIN_WAIT_TIME);
   }
 
   /**
@@ -192,7 +245,7 @@ public class Itinerary implements Serializable {
       double waittime = flight1.getWaitTime(flight2);
       // if wait time is more than 6 (too long) or less than 0 (second flight already departed)
       // then the flights are invalid making the itinerary is invalid
-      if ((waittime > 6) || (waittime < 0.5)) {
+      if ((waittime > MAX_WAIT_TIME) || (waittime < MIN_WAIT_TIME)) {
         return false;
       }
     }
@@ -251,14 +304,11 @@ public class Itinerary implements Serializable {
               flight.getOrigin(), flight.getDestination());
     }
     //get the total time in format HH:MM
-    Calendar date1 = createNewCalendar(getFirstDepartureDateTime());
-    Calendar date2 = createNewCalendar(getLastArrivalDateTime());
-    // get the difference in time in milliseconds
-    long timeDifference = date2.getTimeInMillis() - date1.getTimeInMillis();
+    long timeDifference = this.totalTravelMinutes();
     // get the minutes
-    long diffMinutes = timeDifference / (60 * 1000) % 60;
+    long diffMinutes = timeDifference % 60;
     // get the hours
-    long diffHours = timeDifference / (60 * 60 * 1000);
+    long diffHours = timeDifference / 60;
 
     String hours = String.valueOf(diffHours);
     String minutes = String.valueOf(diffMinutes);
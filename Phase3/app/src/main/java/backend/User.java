@@ -2,9 +2,18 @@ package backend;
 
 import databases.FlightDatabase;
 import databases.UserDatabase;
+import search.ItineraryIterator;
+import search.ItineraryQuery;
+import search.ItinerarySearchCache;
+import search.ItinerarySearchResult;
+import search.ItinerarySearchService;
+import search.ItinerarySorter;
+import search.ItinerarySorter.SortKey;
+import search.SearchResultStore;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.TreeMap;
 
 /**
  * User class.
@@ -16,11 +25,20 @@ public class User implements Serializable {
   // Instance variables
   // to store saved Itineraries
   private ArrayList<Itinerary> bookedItineraries;
-  // a temporary list to show all possible Itineraries to User
-  private ArrayList<Itinerary> itineraryList;
   // the databases
   protected static UserDatabase userDatabase = new UserDatabase();
   protected static FlightDatabase flightDatabase = new FlightDatabase();
+  // the most recent searches, kept for up to 10 minutes unless a flight they use changes
+  protected static ItinerarySearchCache searchCache = new ItinerarySearchCache(100,
+          10 * 60 * 1000);
+  // the itinerary search over the flight database
+  protected static ItinerarySearchService searchService =
+          new ItinerarySearchService(flightDatabase, searchCache);
+
+  static {
+    // drop cached searches when the flights they use change
+    FlightDatabase.addListener(searchCache);
+  }
   // variables for User constructor containing all info
   private String lastName;
   private String firstName;
@@ -49,9 +67,8 @@ public class User implements Serializable {
     this.address = address;
     this.creditCardNumber = creditCardNumber;
     this.expiryDate = expiryDate;
-    // making lists of itineries for user to book and get list
+    // making list of itineries for user to book
     this.bookedItineraries = new ArrayList<Itinerary>();
-    this.itineraryList = new ArrayList<Itinerary>();
     this.isAdmin = isAdmin;
     User.userDatabase.addItem(this);
     User.userDatabase.save();
@@ -111,6 +128,8 @@ public class User implements Serializable {
    * @param email the email to set.
    */
   public void setEmail(String email) {
+    // the latest search results are kept by email, so they go with the user
+    SearchResultStore.move(this.email, email);
     this.email = email;
   }
 
@@ -206,7 +225,7 @@ public class User implements Serializable {
    * Clears the itineary list for this user.
    */
   public void clearItineraries() {
-    this.itineraryList.clear();
+    SearchResultStore.clear(this.email);
   }
 
   /**
@@ -217,12 +236,13 @@ public class User implements Serializable {
   }
 
   /**
-   * Return an arraylist of itineraries.
+   * Return an arraylist of itineraries. These are the itineraries of this user's latest search,
+   * which are kept for the current session only and never saved with the user.
    *
    * @return an arraylist of itineraries.
    */
   public ArrayList<Itinerary> getItineraryListAsList() {
-    return itineraryList;
+    return SearchResultStore.get(this.email);
   }
 
   /**
@@ -231,6 +251,7 @@ public class User implements Serializable {
    * @return the String representation of the list of itineraries.
    */
   public String getItineraryList() {
+    ArrayList<Itinerary> itineraryList = getItineraryListAsList();
     String message = "";
     for (int i = 0; i < itineraryList.size(); i++) {
       message += itineraryList.get(i).toString();
@@ -251,49 +272,133 @@ public class User implements Serializable {
   }
 
   /**
-   * Return an ArrayList of ArrayList of flights which contain all the possible sequences from
-   * the origin to the destination.
+   * Returns the cache of itinerary searches, which keeps the statistics of its hits, misses and
+   * evictions.
    *
-   * @param origin      the location which the user wants to depart from.
-   * @param destination the location which the user wants to travel to.
-   * @return an ArrayList of ArrayList of flights.
-   */
-  private ArrayList<ArrayList<Flight>> search(String origin, String destination,
-                                              ArrayList<String> locations) {
-    // get all the flights that depart from the given origin
-    ArrayList<Flight> allOrigins = User.flightDatabase.getFlightsOfOrigin(origin);
-    // if none were found then return an ArrayList with an empty ArrayList
-    if (allOrigins.size() == 0) {
-      return new ArrayList<ArrayList<Flight>>();
-    }
-    // initiate new list to store all possible flight combinations
-    ArrayList<ArrayList<Flight>> allFlights = new ArrayList<ArrayList<Flight>>();
-    // loop through each of these flights (starting points)
-    for (Flight flight : allOrigins) {
-      // keep track of the locations where we have been
-      locations.add(origin);
-      // if the flight goes directly to the destination then add it to the main list
-      if (flight.getDestination().equals(destination)) {
-        ArrayList<Flight> newFlight = new ArrayList<Flight>();
-        newFlight.add(flight);
-        allFlights.add(newFlight);
-        // otherwise check if we have already visited the destination
-      } else if ((!locations.contains(flight.getDestination()))) {
-        // get all flight possibilities from the current flight's destination to
-        // the actual destination
-        ArrayList<ArrayList<Flight>> listofsubFlights = search(flight.getDestination(),
-                destination, locations);
-        // add the current flight to each of the subflights found
-        for (ArrayList<Flight> subFlights : listofsubFlights) {
-          subFlights.add(0, flight);
-        }
-        // add these new flights to the main list
-        allFlights.addAll(listofsubFlights);
-      }
-      // remove the location that was traversed through
-      locations.remove(locations.size() - 1);
-    }
-    return allFlights;
+   * @return the cache of itinerary searches.
+   */
+  public static ItinerarySearchCache getSearchCache() {
+    return User.searchCache;
+  }
+
+  /**
+   * Returns the valid itineraries for the given query. The search doesn't change or save any
+   * user.
+   *
+   * @param query the query to search for.
+   * @return the valid itineraries for the query.
+   */
+  public static ItinerarySearchResult searchItineraries(ItineraryQuery query) {
+    return User.searchService.search(query);
+  }
+
+  /**
+   * Returns an iterator over the same itineraries as {@link #searchItineraries(ItineraryQuery)},
+   * in the same order, that only searches for each itinerary when it is asked for.
+   *
+   * @param query the query to search for.
+   * @return an iterator over the valid itineraries for the query.
+   */
+  public static ItineraryIterator iterateItineraries(ItineraryQuery query) {
+    return User.searchService.iterator(query);
+  }
+
+  /**
+   * Returns at most limit of the itineraries returned by
+   * {@link #searchItineraries(ItineraryQuery)}, starting with the one at the given offset. The
+   * search stops as soon as the page is full.
+   *
+   * @param query  the query to search for.
+   * @param offset the number of itineraries to skip.
+   * @param limit  the largest number of itineraries to return.
+   * @return the page of valid itineraries for the query.
+   */
+  public static ItinerarySearchResult searchItineraryPage(ItineraryQuery query, int offset,
+                                                          int limit) {
+    return User.searchService.searchPage(query, offset, limit);
+  }
+
+  /**
+   * Returns the same itineraries as {@link #searchItineraries(ItineraryQuery)}, in the same
+   * order, but searches on several threads. The search doesn't change or save any user.
+   *
+   * @param query the query to search for.
+   * @return the valid itineraries for the query.
+   */
+  public static ItinerarySearchResult searchItinerariesInParallel(ItineraryQuery query) {
+    return User.searchService.searchParallel(query);
+  }
+
+  /**
+   * Returns the same itineraries as {@link #searchItineraries(ItineraryQuery)}, in the same
+   * order, but searches from both the origin and the destination so airports that never lead to
+   * the destination are skipped. The search doesn't change or save any user.
+   *
+   * @param query the query to search for.
+   * @return the valid itineraries for the query.
+   */
+  public static ItinerarySearchResult searchItinerariesBidirectional(ItineraryQuery query) {
+    return User.searchService.searchBidirectional(query);
+  }
+
+  /**
+   * Returns the valid itineraries for the given query on its date and on each of the given
+   * number of days before and after it, grouped by departure date. The whole window is searched
+   * at once. The search doesn't change or save any user.
+   *
+   * @param query the query to search for.
+   * @param days  the number of days before and after the date of the query to search.
+   * @return the valid itineraries for every date in the window, keyed by date.
+   */
+  public static TreeMap<String, ItinerarySearchResult> searchItinerariesFlexible(
+          ItineraryQuery query, int days) {
+    return User.searchService.searchFlexible(query, days);
+  }
+
+  /**
+   * Returns the k cheapest valid itineraries for the given query, sorted in non-decreasing
+   * order based on total cost. The search doesn't change or save any user.
+   *
+   * @param query the query to search for.
+   * @param k     the number of itineraries to return.
+   * @return the k cheapest valid itineraries for the query.
+   */
+  public static ItinerarySearchResult searchCheapestItineraries(ItineraryQuery query, int k) {
+    return User.searchService.searchCheapest(query, k);
+  }
+
+  /**
+   * Returns the valid itinerary for the given query that arrives at the destination the
+   * earliest. The search doesn't change or save any user.
+   *
+   * @param query the query to search for.
+   * @return the itinerary that arrives the earliest (no itineraries if there is none).
+   */
+  public static ItinerarySearchResult searchEarliestArrival(ItineraryQuery query) {
+    return User.searchService.searchEarliestArrival(query);
+  }
+
+  /**
+   * Returns the k valid itineraries for the given query with the shortest travel time, sorted
+   * in non-decreasing order based on travel time. The search doesn't change or save any user.
+   *
+   * @param query the query to search for.
+   * @param k     the number of itineraries to return.
+   * @return the k fastest valid itineraries for the query.
+   */
+  public static ItinerarySearchResult searchFastestItineraries(ItineraryQuery query, int k) {
+    return User.searchService.searchFastest(query, k);
+  }
+
+  /**
+   * Returns the valid itineraries for the given query that are Pareto optimal in total cost,
+   * travel time and number of flights. The search doesn't change or save any user.
+   *
+   * @param query the query to search for.
+   * @return the Pareto optimal itineraries for the query.
+   */
+  public static ItinerarySearchResult searchParetoOptimalItineraries(ItineraryQuery query) {
+    return User.searchService.searchParetoOptimal(query);
   }
 
   /**
@@ -304,20 +409,8 @@ public class User implements Serializable {
    * @param destination the location which the user wants to travel to.
    */
   private void createItineraries(String date, String origin, String destination) {
-    // get all the flight combinations that go from the given origin to the given destination
-    ArrayList<ArrayList<Flight>> allflights = search(origin, destination, new ArrayList<String>());
-    // loop through every combination (each combination is a possible itinerary)
-    for (ArrayList<Flight> flights : allflights) {
-      // create new itinerary with each combination of flights
-      Itinerary itinerary = new Itinerary(flights);
-      // if this new itinerary has the wanted departure date and is not empty,
-      // and has valid wait times add it to the main list of itineraries
-      if (!itinerary.is_empty() && itinerary.getFirstDepartureDate().equals(date)
-              && itinerary.hasValidWaitTimes() && itinerary.flightsHaveRoom()) {
-        this.itineraryList.add(itinerary);
-      }
-    }
-
+    ItineraryQuery query = new ItineraryQuery(date, origin, destination);
+    getItineraryListAsList().addAll(searchItineraries(query).getItineraries());
   }
 
   /**
@@ -332,45 +425,6 @@ public class User implements Serializable {
     return getItineraryList();
   }
 
-  /**
-   * Given a list of itineraries create a new list of itineraries that is sorted in non-decreasing
-   * order based on travel time and return it.
-   *
-   * @param itineraryList the list of itineraries that needs to be sorted.
-   * @return a new sorted list of itineraries.
-   */
-  private ArrayList<Itinerary> sortByTravelTime(ArrayList<Itinerary> itineraryList) {
-    // make a new itinerary list
-    ArrayList<Itinerary> newItin = new ArrayList<Itinerary>();
-    // loop through original list
-    for (Itinerary itin : itineraryList) {
-      // if new list is empty then just add itinerary to list
-      if (newItin.isEmpty()) {
-        newItin.add(itin);
-        // else loop through all elements of new itinerary list
-      } else {
-        // keep track whether the itinerary was added to the new list or not
-        boolean added = false;
-        for (Itinerary tempItin : newItin) {
-          // if new itinerary travel time is less than the current itinerary travel time
-          if (itin.totalTravelTime() < tempItin.totalTravelTime()) {
-            // add the temporary itinerary to the new list
-            int index = newItin.indexOf(tempItin);
-            newItin.add(index, itin);
-            added = true;
-            // stop the loop
-            break;
-          }
-        }
-        // if its wasn't added then the itinerary has the largest cost, so add it to the end
-        if (!added) {
-          newItin.add(itin);
-        }
-      }
-    }
-    return newItin;
-  }
-
   /**
    * Given the date, origin and destination, return a string of valid itineraries that is
    * sorted in non-decreasing order based on travel time and return it.
@@ -381,58 +435,23 @@ public class User implements Serializable {
    */
   public String getItinerariesSortedByTime(String date, String origin, String destination) {
     createItineraries(date, origin, destination);
-    this.itineraryList = sortByTravelTime(itineraryList);
+    sortByTime();
     return getItineraryList();
   }
 
   /**
-   * Sort the already existing itinerary list by cost.
+   * Sort the already existing itinerary list by time. Itineraries with the same travel time are
+   * sorted by cost and then by number of flights.
    *
    * @return the itinerary list sorted by time.
    */
   public ArrayList<Itinerary> sortByTime() {
-    this.itineraryList = sortByTravelTime(itineraryList);
+    ArrayList<Itinerary> itineraryList = ItinerarySorter.sort(getItineraryListAsList(),
+            SortKey.TRAVEL_TIME, SortKey.COST, SortKey.LEGS);
+    SearchResultStore.put(this.email, itineraryList);
     return itineraryList;
   }
 
-  /**
-   * Given a list of itineraries create a new list of itineraries that is sorted in non-decreasing
-   * order based on total cost and return it.
-   *
-   * @param itineraryList the list of itineraries that needs to be sorted.
-   * @return a new sorted list of itineraries.
-   */
-  private ArrayList<Itinerary> sortByTotalCost(ArrayList<Itinerary> itineraryList) {
-    // make a new itinerary list
-    ArrayList<Itinerary> newItin = new ArrayList<Itinerary>();
-    // loop through original list
-    for (Itinerary itin : itineraryList) {
-      // if  new list is empty then just add itinerary to list
-      if (newItin.isEmpty()) {
-        newItin.add(itin);
-        // else loop through all elements of new itinerary list
-      } else {
-        boolean added = false;
-        for (Itinerary tempItin : newItin) {
-          // if temporary itinerary cost is less than the current itinerary cost
-          if (itin.getTotalCost() < tempItin.getTotalCost()) {
-            // add the temporary itinerary to the new list
-            int index = newItin.indexOf(tempItin);
-            newItin.add(index, itin);
-            added = true;
-            // stop the loop
-            break;
-          }
-        }
-        // if its wasn't added then the itinerary has the largest cost, so add it to the end
-        if (!added) {
-          newItin.add(itin);
-        }
-      }
-    }
-    return newItin;
-  }
-
   /**
    * Given the date, origin and destination, return a string of valid itineraries that is
    * sorted in non-decreasing order based on total cost and return it.
@@ -443,17 +462,20 @@ public class User implements Serializable {
    */
   public String getItinerariesSortedByCost(String date, String origin, String destination) {
     createItineraries(date, origin, destination);
-    this.itineraryList = sortByTotalCost(itineraryList);
+    sortByCost();
     return getItineraryList();
   }
 
   /**
-   * Sort the already existing itinerary list by cost.
+   * Sort the already existing itinerary list by cost. Itineraries with the same cost are sorted
+   * by travel time and then by number of flights.
    *
    * @return the itinerary list sorted by cost.
    */
   public ArrayList<Itinerary> sortByCost() {
-    this.itineraryList = sortByTotalCost(itineraryList);
+    ArrayList<Itinerary> itineraryList = ItinerarySorter.sort(getItineraryListAsList(),
+            SortKey.COST, SortKey.TRAVEL_TIME, SortKey.LEGS);
+    SearchResultStore.put(this.email, itineraryList);
     return itineraryList;
   }
 
@@ -486,6 +508,7 @@ public class User implements Serializable {
         this.bookedItineraries.add(newItin);
         // book seats in each flight
         newItin.bookFlights();
+        notifySeatsChanged(newItin);
         return true;
       } else {
         return false;
@@ -505,11 +528,24 @@ public class User implements Serializable {
         this.bookedItineraries.remove(itinerary);
         // unbook the seat in each flight of the itinerary
         itinerary.cancelFlights();
+        notifySeatsChanged(itinerary);
         break;
       }
     }
   }
 
+  /**
+   * Lets the listeners of the flight database know that seats changed on the flights of the
+   * given itinerary.
+   *
+   * @param itinerary the itinerary whose flights had seats booked or cancelled.
+   */
+  private static void notifySeatsChanged(Itinerary itinerary) {
+    for (Flight flight : itinerary.getFlights()) {
+      User.flightDatabase.seatsChanged(flight);
+    }
+  }
+
   /**
    * method to allow user to view BookedItineraries.
    *
@@ -0,0 +1,75 @@
+package databases;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A change to a flight of a flight database, as kept in the change log of the database. It
+ * records the flight number, the departure dates before and after the change, and the flights
+ * the flight could follow in an itinerary before or after the change.
+ */
+public class FlightChange {
+
+  private final String flightNum;
+  private final String oldDepartureDate;
+  private final String newDepartureDate;
+  private final ArrayList<String> previousFlightNums;
+
+  /**
+   * Creates a new change to the flight with the given flight number.
+   *
+   * @param flightNum          the flight number of the flight that changed.
+   * @param oldDepartureDate   the departure date before the change (null if the flight was
+   *                           added).
+   * @param newDepartureDate   the departure date after the change (null if the flight was
+   *                           removed).
+   * @param previousFlightNums the flight numbers of the flights the flight could follow before
+   *                           or after the change.
+   */
+  FlightChange(String flightNum, String oldDepartureDate, String newDepartureDate,
+               ArrayList<String> previousFlightNums) {
+    this.flightNum = flightNum;
+    this.oldDepartureDate = oldDepartureDate;
+    this.newDepartureDate = newDepartureDate;
+    this.previousFlightNums = previousFlightNums;
+  }
+
+  /**
+   * Returns the flight number of the flight that changed.
+   *
+   * @return the flight number of the flight that changed.
+   */
+  public String getFlightNum() {
+    return flightNum;
+  }
+
+  /**
+   * Returns the departure date of the flight before the change.
+   *
+   * @return the departure date before the change (in the format YYYY-MM-DD, or null if the
+   *         flight was added).
+   */
+  public String getOldDepartureDate() {
+    return oldDepartureDate;
+  }
+
+  /**
+   * Returns the departure date of the flight after the change.
+   *
+   * @return the departure date after the change (in the format YYYY-MM-DD, or null if the
+   *         flight was removed).
+   */
+  public String getNewDepartureDate() {
+    return newDepartureDate;
+  }
+
+  /**
+   * Returns the flight numbers of the flights the flight could follow in an itinerary before or
+   * after the change. Whatever was worked out from these flights may be out of date.
+   *
+   * @return the flight numbers of the flights the flight could follow.
+   */
+  public List<String> getPreviousFlightNums() {
+    return previousFlightNums;
+  }
+}
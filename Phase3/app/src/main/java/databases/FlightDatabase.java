@@ -11,23 +11,84 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 import backend.Flight;
+import backend.Itinerary;
 
 /**
- * A database to store all flights. The flights are stored in an array list. The
- * state of the database is saved in a json file for serializing and
- * deserializing. The GSON library is used for this process. No duplicates are
- * allowed in the array list. If a flight to be added matches an existing
- * flight, it will not be added.
+ * A database to store all flights. The flights are stored in a linked hash map
+ * keyed by flight number, and the state of the database is saved in a json
+ * file (as a list of flights) using the GSON library. No duplicates are
+ * allowed. If a flight to be added matches an existing flight number, it
+ * overwrites the existing flight.
+ * <p/>
+ * The flights are also indexed by origin, by origin and departure date, by
+ * destination and arrival date, by route and departure date, and by departure
+ * time. For every flight, the flights that can follow it in an itinerary are
+ * kept as well, and only the flights in the wait time window are looked at to
+ * keep them up to date. Every airport is given a small integer id, and
+ * listeners can be registered to hear about every change to a flight.
  *
  * @author Nikki Quibin - quibinni
  */
 public class FlightDatabase implements Database<Flight> {
 
-  // a list to store all flights
-  private ArrayList<Flight> flights;
+  // all flights indexed by their unique flight number, kept in the order they were added
+  private LinkedHashMap<String, Flight> flights;
+  // the same flights in a list, for getting a flight by its position. It is made from the
+  // flight number index the first time it is needed after a change (null until then)
+  private ArrayList<Flight> flightList;
+  // the flights departing from each origin, keyed by origin and then flight number
+  private HashMap<String, LinkedHashMap<String, Flight>> flightsByOrigin;
+  // the flights departing from each origin partitioned by departure date, keyed by origin, then
+  // date and then flight number. The flights of a date are in the same order as the departures
+  // of the origin
+  private HashMap<String, TreeMap<String, LinkedHashMap<String, Flight>>> flightsByOriginAndDate;
+  // the position of each flight among the departures of its origin, keyed by flight number. A
+  // flight keeps its position while it stays at the same origin, and the positions of the
+  // departures of an origin go up in the order the origin index keeps them
+  private HashMap<String, Long> departureOrder;
+  // the position the next flight to join the departures of an origin is given
+  private long nextDepartureOrder;
+  // the flights arriving at each destination, keyed by destination and then flight number
+  private HashMap<String, LinkedHashMap<String, Flight>> flightsByDestination;
+  // the flights arriving at each destination partitioned by arrival date, keyed by destination,
+  // then date and then flight number
+  private HashMap<String, TreeMap<String, LinkedHashMap<String, Flight>>>
+          flightsByDestinationAndDate;
+  // the flights that can follow each flight in an itinerary, keyed by the flight number of the
+  // earlier flight and then the flight number of the later one. They are kept in the same order
+  // as the departures of the airport they leave from
+  private HashMap<String, LinkedHashMap<String, Flight>> connections;
+  // the flights that each flight can follow in an itinerary, keyed by the flight number of the
+  // later flight and then the flight number of the earlier one, so a flight can be taken out of
+  // the connections of the flights before it without looking for them
+  private HashMap<String, HashMap<String, Flight>> previousFlights;
+  // the flights of each route and departure date, keyed by route and date and then flight number
+  private HashMap<String, LinkedHashMap<String, Flight>> flightsByRouteAndDate;
+  // the flights sorted by departure, keyed by departure date and time and then flight number
+  // (the YYYY-MM-DD HH:MM format sorts in time order)
+  private TreeMap<String, LinkedHashMap<String, Flight>> flightsByDeparture;
+  // the number of times a flight has been added or removed, so anything worked out from the
+  // flights can tell when it is out of date
+  private long modifications = 0;
+  // the most recent changes to flights, oldest first, so anything worked out from the flights
+  // can catch up with them instead of starting again. The first change took the modification
+  // count past firstLoggedChange
+  private ArrayDeque<FlightChange> changeLog = new ArrayDeque<>();
+  private long firstLoggedChange = 0;
+  // the most changes the change log keeps
+  private static final int CHANGE_LOG_SIZE = 1000;
   // a re-usuable gson object for serialization/deserialization
   private Gson gson = new Gson();
   // the parameterized type for object serialization/deserialization
@@ -35,6 +96,13 @@ public class FlightDatabase implements Database<Flight> {
   private Type flightType = new TypeToken<ArrayList<Flight>>() {}.getType();
   // store the context
   private static Context context;
+  // the airports that have been given an id, where the id of an airport is its position. The
+  // ids are shared by all flight databases so a flight has the same ids in any of them
+  private static final ArrayList<String> airports = new ArrayList<>();
+  private static final HashMap<String, Integer> airportIds = new HashMap<>();
+  // the listeners to notify of changes to flights. Every flight database holds the flights of
+  // the same file, so the listeners are shared by all of them
+  private static final ArrayList<FlightDatabaseListener> listeners = new ArrayList<>();
 
   /**
    * Get the file of this database from the internal storage.
@@ -68,7 +136,7 @@ public class FlightDatabase implements Database<Flight> {
     File flightsFile = this.getFlightsFile();
 
     if (!flightsFile.exists()) {
-      this.flights = new ArrayList<>();
+      this.buildIndex(new ArrayList<Flight>());
       this.save();
     } else {
       this.load();
@@ -76,44 +144,437 @@ public class FlightDatabase implements Database<Flight> {
   }
 
   /**
-   * Finds the index of the flight in the list. It returns -1 if the flight
-   * cannot be found.
+   * Creates a flight database that holds the given flights in memory only. The json file is
+   * never read, so this can be used without the context of an activity, but the database must
+   * not be saved.
    *
-   * @param flight the flight to find the index of.
-   * @return the index of the flight (-1 if not found).
+   * @param flightList the flights of the database.
    */
-  private int findFlightIndex(Flight flight) {
-    // the index to return
-    int index = 0;
+  public FlightDatabase(ArrayList<Flight> flightList) {
+    this.buildIndex(flightList);
+  }
 
-    // check if the list is empty, if it is, index = -1. If not
-    // then try finding the flight in the list
-    if (this.flights.isEmpty()) {
-      index = -1;
-    } else {
-      for (Flight currFlight : this.flights) {
-        // each flight has a unique flight number, so if they match,
-        // we found the flight
-        if (flight.getFlightnum().equals(currFlight.getFlightnum())) {
-          // we found the index, so break
-          break;
-        } else {
-          // increment the index
-          index += 1;
+  /**
+   * Rebuilds the flight number index and the secondary indexes from the given list of flights.
+   * This should be called whenever the list of flights is replaced as a whole (i.e. on load).
+   *
+   * @param flightList the list of flights to index.
+   */
+  private void buildIndex(ArrayList<Flight> flightList) {
+    this.flights = new LinkedHashMap<>();
+    this.flightList = null;
+    this.flightsByOrigin = new HashMap<>();
+    this.flightsByOriginAndDate = new HashMap<>();
+    this.departureOrder = new HashMap<>();
+    this.nextDepartureOrder = 0;
+    this.flightsByDestination = new HashMap<>();
+    this.flightsByDestinationAndDate = new HashMap<>();
+    this.connections = new HashMap<>();
+    this.previousFlights = new HashMap<>();
+    this.flightsByRouteAndDate = new HashMap<>();
+    this.flightsByDeparture = new TreeMap<>();
+    for (Flight flight : flightList) {
+      this.putFlight(flight);
+    }
+    // the flights were replaced as a whole, so there are no changes to catch up with
+    this.changeLog.clear();
+    this.firstLoggedChange = this.modifications;
+  }
+
+  /**
+   * Returns the id of the given airport. An airport that hasn't been seen before is given the
+   * next id, so the ids of all airports go from 0 to one less than the number of airports.
+   *
+   * @param airport the code of the airport.
+   * @return the id of the airport.
+   */
+  public static synchronized int getAirportId(String airport) {
+    Integer id = FlightDatabase.airportIds.get(airport);
+    if (id == null) {
+      id = FlightDatabase.airports.size();
+      FlightDatabase.airports.add(airport);
+      FlightDatabase.airportIds.put(airport, id);
+    }
+    return id;
+  }
+
+  /**
+   * Returns the id of the given airport if it has been given one, without giving it one
+   * otherwise. Use this for airports that may not be in any flight, such as the ones a user
+   * types in, so they don't take up ids.
+   *
+   * @param airport the code of the airport.
+   * @return the id of the airport, or -1 if it hasn't been given one.
+   */
+  public static synchronized int findAirportId(String airport) {
+    Integer id = FlightDatabase.airportIds.get(airport);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Returns the number of airports that have been given an id.
+   *
+   * @return the number of airports that have been given an id.
+   */
+  public static synchronized int getAirportCount() {
+    return FlightDatabase.airports.size();
+  }
+
+  /**
+   * Registers a listener to be notified of changes to the flights of any flight database.
+   *
+   * @param listener the listener to register.
+   */
+  public static synchronized void addListener(FlightDatabaseListener listener) {
+    FlightDatabase.listeners.add(listener);
+  }
+
+  /**
+   * Stops notifying the given listener of changes to flights.
+   *
+   * @param listener the listener to remove.
+   */
+  public static synchronized void removeListener(FlightDatabaseListener listener) {
+    FlightDatabase.listeners.remove(listener);
+  }
+
+  /**
+   * Notifies every listener of a change to a flight.
+   *
+   * @param oldFlight the flight before the change (null if none).
+   * @param newFlight the flight after the change (null if none).
+   */
+  private static void notifyListeners(Flight oldFlight, Flight newFlight) {
+    ArrayList<FlightDatabaseListener> toNotify;
+    synchronized (FlightDatabase.class) {
+      toNotify = new ArrayList<>(FlightDatabase.listeners);
+    }
+    for (FlightDatabaseListener listener : toNotify) {
+      listener.flightChanged(oldFlight, newFlight);
+    }
+  }
+
+  /**
+   * Moves the flight from the bucket of the old key to the bucket of the new key in the given
+   * secondary index. A null old key means the flight is new to the index and a null new key
+   * means the flight is leaving the index. If both keys are the same, the flight is replaced in
+   * place so the order of the bucket is kept.
+   *
+   * @param index     the secondary index to update.
+   * @param oldKey    the key the flight was indexed under (null if none).
+   * @param newKey    the key the flight should be indexed under (null if none).
+   * @param flightNum the flight number of the flight.
+   * @param flight    the flight to index (ignored if the new key is null).
+   */
+  private static void moveInIndex(Map<String, LinkedHashMap<String, Flight>> index,
+                                  String oldKey, String newKey, String flightNum, Flight flight) {
+    // take the flight out of its old bucket if it is changing buckets
+    if (oldKey != null && !oldKey.equals(newKey)) {
+      LinkedHashMap<String, Flight> bucket = index.get(oldKey);
+      if (bucket != null) {
+        bucket.remove(flightNum);
+        // drop empty buckets so the index only holds keys with flights
+        if (bucket.isEmpty()) {
+          index.remove(oldKey);
         }
       }
     }
+    // put the flight in its new bucket
+    if (newKey != null) {
+      LinkedHashMap<String, Flight> bucket = index.get(newKey);
+      if (bucket == null) {
+        bucket = new LinkedHashMap<>();
+        index.put(newKey, bucket);
+      }
+      bucket.put(flightNum, flight);
+    }
+  }
 
-    // if the index is equal to the size of the list, then it's not in
-    // the list
-    if (index >= this.flights.size()) {
-      index = -1;
-      return index;
-    } else {
-      return index;
+  /**
+   * Updates the secondary indexes of this database when a flight is replaced. The old flight is
+   * null if the flight is new and the new flight is null if the flight is being removed.
+   *
+   * @param oldFlight the flight that was in this database (null if none).
+   * @param newFlight the flight that replaces it (null if none).
+   */
+  private void updateIndexes(Flight oldFlight, Flight newFlight) {
+    String flightNum = newFlight != null ? newFlight.getFlightnum() : oldFlight.getFlightnum();
+    // a flight that stays at the same origin keeps its place among the departures of the
+    // origin, otherwise it goes to the end of them
+    if (newFlight == null) {
+      this.departureOrder.remove(flightNum);
+    } else if (oldFlight == null || !oldFlight.getOrigin().equals(newFlight.getOrigin())) {
+      this.departureOrder.put(flightNum, this.nextDepartureOrder++);
+    }
+    moveInIndex(this.flightsByOrigin, oldFlight != null ? oldFlight.getOrigin() : null,
+            newFlight != null ? newFlight.getOrigin() : null, flightNum, newFlight);
+    this.updateDateIndex(oldFlight, newFlight);
+    moveInIndex(this.flightsByDestination,
+            oldFlight != null ? oldFlight.getDestination() : null,
+            newFlight != null ? newFlight.getDestination() : null, flightNum, newFlight);
+    moveInDateIndex(this.flightsByDestinationAndDate,
+            oldFlight != null ? oldFlight.getDestination() : null,
+            oldFlight != null ? arrivalDate(oldFlight) : null,
+            newFlight != null ? newFlight.getDestination() : null,
+            newFlight != null ? arrivalDate(newFlight) : null, flightNum, newFlight);
+    moveInIndex(this.flightsByRouteAndDate, oldFlight != null ? routeKey(oldFlight) : null,
+            newFlight != null ? routeKey(newFlight) : null, flightNum, newFlight);
+    moveInIndex(this.flightsByDeparture,
+            oldFlight != null ? oldFlight.getDepartureDateTime() : null,
+            newFlight != null ? newFlight.getDepartureDateTime() : null, flightNum, newFlight);
+    ArrayList<String> previous = this.updateConnections(oldFlight, newFlight);
+    this.changeLog.addLast(new FlightChange(flightNum,
+            oldFlight != null ? departureDate(oldFlight) : null,
+            newFlight != null ? departureDate(newFlight) : null, previous));
+    if (this.changeLog.size() > CHANGE_LOG_SIZE) {
+      this.changeLog.removeFirst();
+      this.firstLoggedChange++;
+    }
+  }
+
+  /**
+   * Updates the origin and departure date index when a flight is replaced. This must be called
+   * after the origin index is updated. The old flight is null if the flight is new and the new
+   * flight is null if the flight is being removed.
+   *
+   * @param oldFlight the flight that was in this database (null if none).
+   * @param newFlight the flight that replaces it (null if none).
+   */
+  private void updateDateIndex(Flight oldFlight, Flight newFlight) {
+    String flightNum = newFlight != null ? newFlight.getFlightnum() : oldFlight.getFlightnum();
+    String oldDate = oldFlight != null ? departureDate(oldFlight) : null;
+    String newDate = newFlight != null ? departureDate(newFlight) : null;
+    moveInDateIndex(this.flightsByOriginAndDate, oldFlight != null ? oldFlight.getOrigin() : null,
+            oldDate, newFlight != null ? newFlight.getOrigin() : null, newDate, flightNum,
+            newFlight);
+    if (oldFlight != null && newFlight != null
+            && oldFlight.getOrigin().equals(newFlight.getOrigin()) && !oldDate.equals(newDate)) {
+      // the flight kept its place among the departures of its origin but went to the end of its
+      // new date, so put the flights of the date back in the order of the departures
+      LinkedHashMap<String, Flight> bucket =
+              this.flightsByOriginAndDate.get(newFlight.getOrigin()).get(newDate);
+      ArrayList<Flight> departures = new ArrayList<>(bucket.values());
+      this.sortByDepartureOrder(departures);
+      bucket.clear();
+      for (Flight flight : departures) {
+        bucket.put(flight.getFlightnum(), flight);
+      }
+    }
+  }
+
+  /**
+   * Moves the flight between the buckets of an index keyed by airport and then date. A null old
+   * airport means the flight is new to the index and a null new airport means the flight is
+   * leaving the index. If the airport and date stay the same, the flight is replaced in place.
+   *
+   * @param index      the index to update.
+   * @param oldAirport the airport the flight was indexed under (null if none).
+   * @param oldDate    the date the flight was indexed under (ignored if the old airport is null).
+   * @param newAirport the airport the flight should be indexed under (null if none).
+   * @param newDate    the date the flight should be indexed under (ignored if the new airport is
+   *                   null).
+   * @param flightNum  the flight number of the flight.
+   * @param flight     the flight to index (ignored if the new airport is null).
+   */
+  private static void moveInDateIndex(
+          HashMap<String, TreeMap<String, LinkedHashMap<String, Flight>>> index,
+          String oldAirport, String oldDate, String newAirport, String newDate, String flightNum,
+          Flight flight) {
+    boolean sameAirport = oldAirport != null && oldAirport.equals(newAirport);
+    // take the flight out of the dates of its old airport if it is leaving it
+    if (oldAirport != null && !sameAirport) {
+      TreeMap<String, LinkedHashMap<String, Flight>> dates = index.get(oldAirport);
+      if (dates != null) {
+        moveInIndex(dates, oldDate, null, flightNum, null);
+        if (dates.isEmpty()) {
+          index.remove(oldAirport);
+        }
+      }
+    }
+    if (newAirport == null) {
+      return;
+    }
+    TreeMap<String, LinkedHashMap<String, Flight>> dates = index.get(newAirport);
+    if (dates == null) {
+      dates = new TreeMap<>();
+      index.put(newAirport, dates);
+    }
+    moveInIndex(dates, sameAirport ? oldDate : null, newDate, flightNum, flight);
+  }
+
+  /**
+   * Sorts the given departures of an airport into the order the origin index keeps them.
+   *
+   * @param departures the flights to sort, all departing from the same airport.
+   */
+  private void sortByDepartureOrder(ArrayList<Flight> departures) {
+    Collections.sort(departures, new Comparator<Flight>() {
+      @Override
+      public int compare(Flight flight1, Flight flight2) {
+        long order1 = departureOrder.get(flight1.getFlightnum());
+        long order2 = departureOrder.get(flight2.getFlightnum());
+        return order1 < order2 ? -1 : (order1 == order2 ? 0 : 1);
+      }
+    });
+  }
+
+  /**
+   * Returns the departure date of the given flight.
+   *
+   * @param flight the flight to get the departure date of.
+   * @return the departure date of the flight (in the format YYYY-MM-DD).
+   */
+  private static String departureDate(Flight flight) {
+    // extract only the date from the departure date and time field
+    return flight.getDepartureDateTime().substring(0, 10);
+  }
+
+  /**
+   * Returns the arrival date of the given flight.
+   *
+   * @param flight the flight to get the arrival date of.
+   * @return the arrival date of the flight (in the format YYYY-MM-DD).
+   */
+  private static String arrivalDate(Flight flight) {
+    // extract only the date from the arrival date and time field
+    return flight.getArrivalDateTime().substring(0, 10);
+  }
+
+  /**
+   * Updates the connections of this database when a flight is replaced. This must be called
+   * after the other indexes are updated. The old flight is null if the flight is new and the
+   * new flight is null if the flight is being removed. Only the flights that depart or arrive
+   * within the wait time window of the flight are looked at.
+   *
+   * @param oldFlight the flight that was in this database (null if none).
+   * @param newFlight the flight that replaces it (null if none).
+   * @return the flight numbers of the flights the flight could follow before or after.
+   */
+  private ArrayList<String> updateConnections(Flight oldFlight, Flight newFlight) {
+    String flightNum = newFlight != null ? newFlight.getFlightnum() : oldFlight.getFlightnum();
+    long minWait = Math.round(Itinerary.MIN_WAIT_TIME * 60);
+    long maxWait = Math.round(Itinerary.MAX_WAIT_TIME * 60);
+
+    // take the flight out of the connections of the flights it could follow
+    ArrayList<String> changed = new ArrayList<>();
+    HashMap<String, Flight> previous = this.previousFlights.remove(flightNum);
+    if (previous != null) {
+      for (String previousNum : previous.keySet()) {
+        this.connections.get(previousNum).remove(flightNum);
+        changed.add(previousNum);
+      }
+    }
+    // and take the flights that could follow it out of its own connections
+    LinkedHashMap<String, Flight> oldNext = this.connections.remove(flightNum);
+    if (oldNext != null) {
+      for (String nextNum : oldNext.keySet()) {
+        this.removePrevious(nextNum, flightNum);
+      }
+    }
+    if (newFlight == null) {
+      return changed;
+    }
+
+    // work out the flights that can follow the flight
+    LinkedHashMap<String, Flight> next = new LinkedHashMap<>();
+    for (Flight flight : this.getFlightsDepartingBetween(newFlight.getDestination(),
+            newFlight.getArrivalMinutes() + minWait, newFlight.getArrivalMinutes() + maxWait)) {
+      if (flight != newFlight && Itinerary.isValidConnection(newFlight, flight)) {
+        next.put(flight.getFlightnum(), flight);
+        this.addPrevious(flight.getFlightnum(), newFlight);
+      }
+    }
+    this.connections.put(flightNum, next);
+
+    // add the flight to the connections of the flights landing at its origin in time
+    long order = this.departureOrder.get(flightNum);
+    for (Flight earlier : this.getFlightsArrivingBetween(newFlight.getOrigin(),
+            newFlight.getDepartureMinutes() - maxWait,
+            newFlight.getDepartureMinutes() - minWait)) {
+      LinkedHashMap<String, Flight> earlierNext = this.connections.get(earlier.getFlightnum());
+      if (earlierNext == null || earlier == newFlight
+              || !Itinerary.isValidConnection(earlier, newFlight)) {
+        continue;
+      }
+      this.addPrevious(flightNum, earlier);
+      if (previous == null || !previous.containsKey(earlier.getFlightnum())) {
+        changed.add(earlier.getFlightnum());
+      }
+      Flight last = null;
+      for (Flight flight : earlierNext.values()) {
+        last = flight;
+      }
+      if (last == null || this.departureOrder.get(last.getFlightnum()) < order) {
+        // the flight is last among the departures of the connections, so putting it keeps the
+        // connections in order of departure
+        earlierNext.put(flightNum, newFlight);
+      } else {
+        // the flight goes somewhere in the middle, so put the connections back in order
+        ArrayList<Flight> ordered = new ArrayList<>(earlierNext.values());
+        ordered.add(newFlight);
+        this.sortByDepartureOrder(ordered);
+        earlierNext.clear();
+        for (Flight flight : ordered) {
+          earlierNext.put(flight.getFlightnum(), flight);
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Records that the flight with the given flight number can follow the given earlier flight.
+   *
+   * @param flightNum the flight number of the later flight.
+   * @param earlier   the earlier flight.
+   */
+  private void addPrevious(String flightNum, Flight earlier) {
+    HashMap<String, Flight> previous = this.previousFlights.get(flightNum);
+    if (previous == null) {
+      previous = new HashMap<>();
+      this.previousFlights.put(flightNum, previous);
+    }
+    previous.put(earlier.getFlightnum(), earlier);
+  }
+
+  /**
+   * Forgets that the flight with the given flight number can follow the earlier flight.
+   *
+   * @param flightNum  the flight number of the later flight.
+   * @param earlierNum the flight number of the earlier flight.
+   */
+  private void removePrevious(String flightNum, String earlierNum) {
+    HashMap<String, Flight> previous = this.previousFlights.get(flightNum);
+    if (previous != null) {
+      previous.remove(earlierNum);
+      if (previous.isEmpty()) {
+        this.previousFlights.remove(flightNum);
+      }
     }
   }
 
+  /**
+   * Returns the key of the route and departure date index for the given route and date.
+   *
+   * @param origin        a flight origin.
+   * @param destination   a flight destination.
+   * @param departureDate a departure date (in the format YYYY-MM-DD).
+   * @return the key of the route and departure date index.
+   */
+  private static String routeKey(String origin, String destination, String departureDate) {
+    return origin + "\n" + destination + "\n" + departureDate;
+  }
+
+  /**
+   * Returns the key of the route and departure date index for the given flight.
+   *
+   * @param flight the flight to get the key of.
+   * @return the key of the route and departure date index.
+   */
+  private static String routeKey(Flight flight) {
+    return routeKey(flight.getOrigin(), flight.getDestination(), departureDate(flight));
+  }
+
   /**
    * Add the flight to this database. If the given flight is already in this
    * database, then it will be overwritten.
@@ -122,17 +583,38 @@ public class FlightDatabase implements Database<Flight> {
    */
   @Override
   public void addItem(Flight flight) {
-    // check if the flight is already in the list, if it is, overwrite
-    // the existing flight
-    int index = findFlightIndex(flight);
-    if (index < 0) {
-      this.flights.add(flight);
-    } else {
-      // check that the index is valid. Replace the flight if it is
-      if (index < this.flights.size()) {
-        this.flights.set(index, flight);
-      }
-    }
+    Flight oldFlight = this.putFlight(flight);
+    notifyListeners(oldFlight, flight);
+  }
+
+  /**
+   * Puts the flight in the flight number index and the secondary indexes without notifying the
+   * listeners.
+   *
+   * @param flight the flight to put.
+   * @return the flight that was overwritten (null if none).
+   */
+  private Flight putFlight(Flight flight) {
+    // flights loaded from json skip the constructor, so their times are parsed here
+    flight.parseTimes();
+    flight.setAirportIds(getAirportId(flight.getOrigin()), getAirportId(flight.getDestination()));
+    // if the flight number is already in the index, the existing flight is overwritten in place,
+    // otherwise the flight is added to the end
+    Flight oldFlight = this.flights.put(flight.getFlightnum(), flight);
+    this.flightList = null;
+    this.updateIndexes(oldFlight, flight);
+    this.modifications++;
+    return oldFlight;
+  }
+
+  /**
+   * Notifies the listeners that seats were booked or cancelled on the given flight. This should
+   * be called whenever the seats of a flight change without the flight being added again.
+   *
+   * @param flight the flight whose seats changed.
+   */
+  public void seatsChanged(Flight flight) {
+    notifyListeners(flight, flight);
   }
 
   /**
@@ -143,21 +625,22 @@ public class FlightDatabase implements Database<Flight> {
    */
   @Override
   public boolean removeItem(Flight flight) {
-    // the index of the flight
-    int index = findFlightIndex(flight);
-
     // if the item was removed, return true, otherwise false
-    if (index < 0) {
+    Flight oldFlight = this.flights.remove(flight.getFlightnum());
+    if (oldFlight == null) {
       return false;
     } else {
-      this.flights.remove(index);
+      this.flightList = null;
+      this.updateIndexes(oldFlight, null);
+      this.modifications++;
+      notifyListeners(oldFlight, null);
       return true;
     }
   }
 
   /**
    * Returns the flight object at the given index if it is valid. It will return
-   * a null value if the index is invalid.
+   * a null value if the index is invalid. The flights are in the order they were added.
    *
    * @param index the index of the desired flight.
    * @return the flight object at the given index, or null if index is invalid.
@@ -169,8 +652,22 @@ public class FlightDatabase implements Database<Flight> {
     if (index < 0 || index >= this.flights.size()) {
       return null;
     } else {
-      return this.flights.get(index);
+      return this.getFlightList().get(index);
+    }
+  }
+
+  /**
+   * Returns the flights of this database in a list, in the order they were added. The list is
+   * only made again after the flights change, so getting every flight by its position takes
+   * linear time in all.
+   *
+   * @return the flights of this database in a list.
+   */
+  private ArrayList<Flight> getFlightList() {
+    if (this.flightList == null) {
+      this.flightList = new ArrayList<>(this.flights.values());
     }
+    return this.flightList;
   }
 
   /**
@@ -182,21 +679,14 @@ public class FlightDatabase implements Database<Flight> {
    database
    */
   public Flight getFlight(String flightNum) {
-    // the flight to return
-    Flight flight = null;
-    // find the user with the corresponding email if it exists
-    for (Flight currFlight : this.flights) {
-      if (flightNum.equals(currFlight.getFlightnum())) {
-        flight = currFlight;
-        return flight;
-      }
-    }
-    return null;
+    // look up the flight in the flight number index
+    return this.flights.get(flightNum);
   }
 
   /**
-   * /** Returns an array list of all flights that depart from origin and arrive
-   * at destination on the given date.
+   * Returns an array list of all flights that depart from origin and arrive
+   * at destination on the given date. The flights come straight from the route
+   * and departure date index.
    *
    * @param origin        a flight origin.
    * @param destination   a flight destination.
@@ -205,50 +695,201 @@ public class FlightDatabase implements Database<Flight> {
    destination on the given date.
    */
   public ArrayList<Flight> getFlights(String origin, String destination, String departureDate) {
-    // create an array list to return
-    ArrayList<Flight> flights = new ArrayList<Flight>();
-
-    for (Flight flight : this.flights) {
-      // extract only the date from the departure date and time field
-      String date = flight.getDepartureDateTime().substring(0, 10);
-      // check if the origins, destinations, and departure dates and times matches. If they
-      // do, add it
-      if (origin.equals(flight.getOrigin()) && destination.equals(flight.getDestination())
-              && departureDate.equals(date)) {
-        flights.add(flight);
-      }
+    // get the flights of the route on the given date from the index
+    LinkedHashMap<String, Flight> matches = this.flightsByRouteAndDate.get(
+            routeKey(origin, destination, departureDate));
+    if (matches == null) {
+      return new ArrayList<Flight>();
+    } else {
+      return new ArrayList<Flight>(matches.values());
     }
-    return flights;
   }
 
   /**
    * Returns an array list of all the flights in this database with the given
-   * origin.
+   * origin. The flights come from the origin index, so only the departures of
+   * the given origin are looked at.
    *
    * @param origin the origin of the flight.
    * @return an array list of all the flights with the given origin.
    */
   public ArrayList<Flight> getFlightsOfOrigin(String origin) {
-    // the array list to return
-    ArrayList<Flight> flights = new ArrayList<Flight>();
-
-    // find the flights that have the same origin
-    for (Flight flight : this.flights) {
-      if (origin.equals(flight.getOrigin())) {
-        // add it to the list
-        flights.add(flight);
+    // get the departures of the origin from the index
+    LinkedHashMap<String, Flight> departures = this.flightsByOrigin.get(origin);
+    if (departures == null) {
+      return new ArrayList<Flight>();
+    } else {
+      return new ArrayList<Flight>(departures.values());
+    }
+  }
+
+  /**
+   * Returns the flights in this database that depart from the given origin between the first
+   * and last dates, grouped by departure date. The flights come from the origin and departure
+   * date index, so only the dates in the window are looked at, and the flights of each date are
+   * in the same order as {@link #getFlightsOfOrigin(String)} returns them.
+   *
+   * @param origin    the origin of the flights.
+   * @param firstDate the first departure date (in the format YYYY-MM-DD).
+   * @param lastDate  the last departure date (in the format YYYY-MM-DD).
+   * @return the flights departing on each date in the window that has any, keyed by date.
+   */
+  public TreeMap<String, ArrayList<Flight>> getFlightsOfOrigin(String origin, String firstDate,
+                                                                String lastDate) {
+    TreeMap<String, ArrayList<Flight>> byDate = new TreeMap<>();
+    TreeMap<String, LinkedHashMap<String, Flight>> dates = this.flightsByOriginAndDate.get(origin);
+    if (dates != null) {
+      for (Map.Entry<String, LinkedHashMap<String, Flight>> date
+              : dates.subMap(firstDate, true, lastDate, true).entrySet()) {
+        byDate.put(date.getKey(), new ArrayList<Flight>(date.getValue().values()));
+      }
+    }
+    return byDate;
+  }
+
+  /**
+   * Returns the flights in this database that depart from the given origin between the first
+   * and last times, inclusive, in the same order as {@link #getFlightsOfOrigin(String)} returns
+   * them. Only the dates of the window are looked at in the origin and departure date index.
+   *
+   * @param origin the origin of the flights.
+   * @param first  the earliest departure in minutes since the start of 1970.
+   * @param last   the latest departure in minutes since the start of 1970.
+   * @return the flights departing from the origin in the window.
+   */
+  public ArrayList<Flight> getFlightsDepartingBetween(String origin, long first, long last) {
+    ArrayList<Flight> departures = new ArrayList<>();
+    TreeMap<String, LinkedHashMap<String, Flight>> dates = this.flightsByOriginAndDate.get(origin);
+    if (dates == null || first > last) {
+      return departures;
+    }
+    for (LinkedHashMap<String, Flight> date
+            : dates.subMap(Flight.dateOf(first), true, Flight.dateOf(last), true).values()) {
+      for (Flight flight : date.values()) {
+        if (flight.getDepartureMinutes() >= first && flight.getDepartureMinutes() <= last) {
+          departures.add(flight);
+        }
       }
     }
-    return flights;
+    // the flights of each date are in order, but the window can cover more than one date
+    this.sortByDepartureOrder(departures);
+    return departures;
   }
 
   /**
-   * Returns an array list of all the flights in this database.
+   * Returns the flights in this database that arrive at the given destination between the first
+   * and last times, inclusive, in no particular order. Only the dates of the window are looked
+   * at in the destination and arrival date index.
+   *
+   * @param destination the destination of the flights.
+   * @param first       the earliest arrival in minutes since the start of 1970.
+   * @param last        the latest arrival in minutes since the start of 1970.
+   * @return the flights arriving at the destination in the window.
+   */
+  public ArrayList<Flight> getFlightsArrivingBetween(String destination, long first, long last) {
+    ArrayList<Flight> arrivals = new ArrayList<>();
+    TreeMap<String, LinkedHashMap<String, Flight>> dates =
+            this.flightsByDestinationAndDate.get(destination);
+    if (dates == null || first > last) {
+      return arrivals;
+    }
+    for (LinkedHashMap<String, Flight> date
+            : dates.subMap(Flight.dateOf(first), true, Flight.dateOf(last), true).values()) {
+      for (Flight flight : date.values()) {
+        if (flight.getArrivalMinutes() >= first && flight.getArrivalMinutes() <= last) {
+          arrivals.add(flight);
+        }
+      }
+    }
+    return arrivals;
+  }
+
+  /**
+   * Returns an array list of all the flights in this database with the given
+   * destination. The flights come from the destination index.
+   *
+   * @param destination the destination of the flight.
+   * @return an array list of all the flights with the given destination.
+   */
+  public ArrayList<Flight> getFlightsOfDestination(String destination) {
+    // get the arrivals of the destination from the index
+    LinkedHashMap<String, Flight> arrivals = this.flightsByDestination.get(destination);
+    if (arrivals == null) {
+      return new ArrayList<Flight>();
+    } else {
+      return new ArrayList<Flight>(arrivals.values());
+    }
+  }
+
+  /**
+   * Returns an array list of the flights in this database that can follow the given flight in
+   * an itinerary. That is, the flights that depart from the destination of the given flight
+   * between 0.5 and 6 hours after it arrives. They are in the same order as
+   * {@link #getFlightsOfOrigin(String)} returns them. Whether the flights have room isn't
+   * checked.
+   *
+   * @param flight a flight in this database.
+   * @return an array list of the flights that can follow the given flight.
+   */
+  public ArrayList<Flight> getConnections(Flight flight) {
+    // get the connections of the flight from the table
+    LinkedHashMap<String, Flight> next = this.connections.get(flight.getFlightnum());
+    if (next == null) {
+      return new ArrayList<Flight>();
+    } else {
+      return new ArrayList<Flight>(next.values());
+    }
+  }
+
+  /**
+   * Returns an iterator over the flights of this database that depart at or after the given
+   * date and time, in order of departure. The flights come from the departure index, so the
+   * iterator only looks at as many flights as are taken from it.
+   *
+   * @param departureDateTime the earliest departure (in the format YYYY-MM-DD or
+   *                          YYYY-MM-DD HH:MM).
+   * @return an iterator over the flights in order of departure.
+   */
+  public Iterator<Flight> getFlightsByDeparture(String departureDateTime) {
+    final Iterator<LinkedHashMap<String, Flight>> buckets =
+            this.flightsByDeparture.tailMap(departureDateTime, true).values().iterator();
+    return new Iterator<Flight>() {
+      // the flights that depart at the current departure time
+      private Iterator<Flight> bucket = null;
+
+      @Override
+      public boolean hasNext() {
+        // move on to the next departure time when this one runs out
+        while ((bucket == null || !bucket.hasNext()) && buckets.hasNext()) {
+          bucket = buckets.next().values().iterator();
+        }
+        return bucket != null && bucket.hasNext();
+      }
+
+      @Override
+      public Flight next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return bucket.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Returns an array list of all the flights in this database, in the order they were added.
+   * The list is a copy, so changing it doesn't change this database (use addItem and removeItem
+   * for that), and making it takes linear time, so get it once rather than in a loop.
    *
    * @return an array list of all the flights in this database.
    */
   public ArrayList<Flight> getAllFlights() {
-    return this.flights;
+    return new ArrayList<>(this.getFlightList());
   }
 
   /**
@@ -259,16 +900,59 @@ public class FlightDatabase implements Database<Flight> {
    */
   @Override
   public boolean contains(String flightNum) {
-    boolean result = false;
-    // loop through the flights list and check if the flight number matches. Return true if it is,
-    // otherwise false
-    for (Flight flight : this.flights) {
-      if (flightNum.equals(flight.getFlightnum())) {
-        result = true;
-        break;
+    return this.flights.containsKey(flightNum);
+  }
+
+  /**
+   * Returns the number of times a flight has been added to or removed from this database. Seats
+   * being booked or cancelled don't count.
+   *
+   * @return the number of times a flight has been added or removed.
+   */
+  public long getModificationCount() {
+    return this.modifications;
+  }
+
+  /**
+   * Returns the changes to flights made since the modification count was the given number, oldest
+   * first. Only the most recent changes are kept, so this returns null if the changes since then
+   * are no longer known, and anything worked out from the flights has to start again.
+   *
+   * @param modificationCount a modification count this database has had.
+   * @return the changes since then (null if they are no longer known).
+   */
+  public ArrayList<FlightChange> getChangesSince(long modificationCount) {
+    if (modificationCount < this.firstLoggedChange
+            || modificationCount > this.modifications) {
+      return null;
+    }
+    ArrayList<FlightChange> changes = new ArrayList<>();
+    long skip = modificationCount - this.firstLoggedChange;
+    for (FlightChange change : this.changeLog) {
+      if (skip > 0) {
+        skip--;
+      } else {
+        changes.add(change);
       }
     }
-    return result;
+    return changes;
+  }
+
+  /**
+   * Returns the flights in this database that the given flight can follow in an itinerary.
+   * That is, the flights that are followed by it in {@link #getConnections(Flight)}. They are in
+   * no particular order.
+   *
+   * @param flight a flight in this database.
+   * @return the flights the given flight can follow.
+   */
+  public ArrayList<Flight> getPreviousFlights(Flight flight) {
+    HashMap<String, Flight> previous = this.previousFlights.get(flight.getFlightnum());
+    if (previous == null) {
+      return new ArrayList<Flight>();
+    } else {
+      return new ArrayList<Flight>(previous.values());
+    }
   }
 
   /**
@@ -298,7 +982,7 @@ public class FlightDatabase implements Database<Flight> {
       File flightsFile = this.getFlightsFile();
       // save the current state of this database by using gson to serialize
       FileWriter writer = new FileWriter(flightsFile);
-      gson.toJson(this.flights, this.flightType, writer);
+      gson.toJson(new ArrayList<>(this.flights.values()), this.flightType, writer);
       // close the writer
       writer.close();
     } catch (IOException e) {
@@ -316,8 +1000,9 @@ public class FlightDatabase implements Database<Flight> {
       File flightsFile = this.getFlightsFile();
       // use a buffered reader to read the json file
       BufferedReader reader = new BufferedReader(new FileReader(flightsFile));
-      // restore this user database (deserialization)
-      this.flights = gson.fromJson(reader, this.flightType);
+      // restore this flight database (deserialization) and rebuild the index
+      ArrayList<Flight> flightList = gson.fromJson(reader, this.flightType);
+      this.buildIndex(flightList);
       // close the reader
       reader.close();
     } catch (IOException e) {
@@ -333,7 +1018,7 @@ public class FlightDatabase implements Database<Flight> {
   @Override
   public String toString() {
     String message = "[Flight Database]\n";
-    for (Flight flight : this.flights) {
+    for (Flight flight : this.flights.values()) {
       message += flight.toString() + "\n";
     }
     return message;
@@ -0,0 +1,19 @@
+package databases;
+
+import backend.Flight;
+
+/**
+ * Listens for changes to the flights of the flight databases.
+ */
+public interface FlightDatabaseListener {
+
+  /**
+   * Called after a flight is added, replaced or removed, or after the seats of a flight change.
+   * The old flight is null if the flight was added and the new flight is null if the flight was
+   * removed. Both are the same flight if only its seats changed.
+   *
+   * @param oldFlight the flight before the change (null if none).
+   * @param newFlight the flight after the change (null if none).
+   */
+  public void flightChanged(Flight oldFlight, Flight newFlight);
+}
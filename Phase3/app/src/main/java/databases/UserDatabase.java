@@ -13,22 +13,30 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import backend.Flight;
+import backend.Itinerary;
 import backend.User;
 
 /**
- * A database to store all users. The users are stored in an array list. The
- * state of the database is saved in a json file for serializing and
- * deserializing. The GSON library is used for this process. No duplicates are
- * allowed in the array list. If a user to be added matches an existing user, it
- * will not be added.
+ * A database to store all users. The users are stored in a linked hash map
+ * keyed by email, so lookups by email do not depend on the number of users.
+ * The state of the database is saved in a json file (as a list of users) for
+ * serializing and deserializing. The GSON library is used for this process. No
+ * duplicates are allowed. If a user to be added matches an existing email, it
+ * overwrites the existing user.
  *
  * @author Nikki Quibin - quibinni
  */
 public class UserDatabase implements Database<User>, Serializable {
 
-  // a list to store all users
-  private ArrayList<User> users;
+  // all users indexed by their unique email, kept in the order they were added
+  private LinkedHashMap<String, User> users;
+  // the same users in a list, for getting a user by its position. It is made from the email
+  // index the first time it is needed after a change (null until then)
+  private transient ArrayList<User> userList;
   // a re-usable gson object for serialization/deserialization
   private Gson gson = new Gson();
   // the parameterized type for object serialization/deserialization
@@ -60,7 +68,7 @@ public class UserDatabase implements Database<User>, Serializable {
     File usersFile = this.getUsersFile();
 
     if (!usersFile.exists()) {
-      this.users = new ArrayList<>();
+      this.users = new LinkedHashMap<>();
       this.save();
     } else {
       this.load();
@@ -68,41 +76,24 @@ public class UserDatabase implements Database<User>, Serializable {
   }
 
   /**
-   * Finds the index of the user in the list. It returns -1 if the user cannot
-   * be found.
+   * Rebuilds the email index from the given list of users. This should be called whenever the
+   * list of users is replaced as a whole (i.e. on load).
    *
-   * @param user the user to find the index of.
-   * @return the index of the user (-1 if not found).
+   * @param userList the list of users to index.
    */
-  private int findUserIndex(User user) {
-    // the index to return
-    int index = 0;
-
-    // check if the list is empty, if it is, index = -1. If not,
-    // then check if the user is in the list
-    if (this.users.isEmpty()) {
-      index = -1;
-    } else {
-      for (User currUser : this.users) {
-        // each user must have a unique email, so if they match
-        // we found the user
-        if (user.getEmail().equals(currUser.getEmail())) {
-          // we found the index
-          break;
-        } else {
-          // increment the index
-          index += 1;
+  private void buildIndex(ArrayList<User> userList) {
+    this.users = new LinkedHashMap<>();
+    this.userList = null;
+    for (User user : userList) {
+      // the booked itineraries and their flights skip the constructor when they are loaded
+      // from json, so the times and totals are worked out here
+      for (Itinerary itinerary : user.getBookedItineraryListAsList()) {
+        for (Flight flight : itinerary.getFlights()) {
+          flight.parseTimes();
         }
+        itinerary.computeTotals();
       }
-    }
-
-    // if the index is equal to the size of the list, then it's not in
-    // the list
-    if (index >= this.users.size()) {
-      index = -1;
-      return index;
-    } else {
-      return index;
+      this.users.put(user.getEmail(), user);
     }
   }
 
@@ -115,16 +106,9 @@ public class UserDatabase implements Database<User>, Serializable {
   @Override
   public void addItem(User user) {
     // add the user to the database if it's not already there, otherwise
-    // overwrite the existing user
-    int index = findUserIndex(user);
-    if (index < 0) {
-      this.users.add(user);
-    } else {
-      // check that the index is valid. Replace the user if it is
-      if (index < this.users.size()) {
-        this.users.set(index, user);
-      }
-    }
+    // overwrite the existing user in place
+    this.users.put(user.getEmail(), user);
+    this.userList = null;
   }
 
   /**
@@ -135,21 +119,38 @@ public class UserDatabase implements Database<User>, Serializable {
    */
   @Override
   public boolean removeItem(User user) {
-    // the index of the user
-    int index = findUserIndex(user);
-
     // return true if the user was removed, otherwise false
-    if (index < 0) {
-      return false;
-    } else {
-      this.users.remove(index);
-      return true;
+    this.userList = null;
+    return this.users.remove(user.getEmail()) != null;
+  }
+
+  /**
+   * Changes the email of the given user to the new email. The user keeps its place in this
+   * database, so the order of the users doesn't change. The new email must not be the email of
+   * another user, since that user would be overwritten.
+   *
+   * @param user     the user whose email changes.
+   * @param newEmail the new email of the user.
+   */
+  public void changeEmail(User user, String newEmail) {
+    String oldEmail = user.getEmail();
+    // put every user back in the same order, with the user under the new email
+    LinkedHashMap<String, User> reindexed = new LinkedHashMap<>();
+    for (Map.Entry<String, User> entry : this.users.entrySet()) {
+      if (entry.getKey().equals(oldEmail)) {
+        reindexed.put(newEmail, user);
+      } else {
+        reindexed.put(entry.getKey(), entry.getValue());
+      }
     }
+    user.setEmail(newEmail);
+    this.users = reindexed;
+    this.userList = null;
   }
 
   /**
    * Returns the user obect at the given index. It will return a null value if
-   * the index is invalid.
+   * the index is invalid. The users are in the order they were added.
    *
    * @param index the index of the desired user.
    * @return the user object at the given index, or null if the index is
@@ -163,7 +164,12 @@ public class UserDatabase implements Database<User>, Serializable {
     if (index < 0 || index >= this.users.size()) {
       return null;
     } else {
-      return this.users.get(index);
+      if (this.userList == null) {
+        // the list is only made again after the users change, so getting every user by its
+        // position takes linear time in all
+        this.userList = new ArrayList<>(this.users.values());
+      }
+      return this.userList.get(index);
     }
   }
 
@@ -174,17 +180,8 @@ public class UserDatabase implements Database<User>, Serializable {
    * @return the user in this database with the given email.
    */
   public User getUser(String email) {
-    // the user to return
-    User user = null;
-    // find the user with the corresponding email if it exists
-    for (User currUser : this.users) {
-      if (email.equals(currUser.getEmail())) {
-        user = currUser;
-        return user;
-      }
-    }
-
-    return null;
+    // look up the user in the email index
+    return this.users.get(email);
   }
 
   /**
@@ -196,7 +193,7 @@ public class UserDatabase implements Database<User>, Serializable {
     // list to return
     ArrayList<User> clients = new ArrayList<>();
     // loop through the user database and add it to the list to return if it's a client
-    for (User user : this.users) {
+    for (User user : this.users.values()) {
       if (!user.isAdmin()) {
         clients.add(user);
       }
@@ -213,7 +210,7 @@ public class UserDatabase implements Database<User>, Serializable {
     // list to return
     ArrayList<User> admins = new ArrayList<>();
     // loop through the user database and add it to the list to return if it's an admin
-    for (User user : this.users) {
+    for (User user : this.users.values()) {
       if (user.isAdmin()) {
         admins.add(user);
       }
@@ -229,15 +226,7 @@ public class UserDatabase implements Database<User>, Serializable {
    */
   @Override
   public boolean contains(String email) {
-    boolean result = false;
-    // loop through the users list and return true if the user's email matches
-    for (User user : this.users) {
-      if (email.equals(user.getEmail())) {
-        result = true;
-        break;
-      }
-    }
-    return result;
+    return this.users.containsKey(email);
   }
 
   /**
@@ -260,7 +249,7 @@ public class UserDatabase implements Database<User>, Serializable {
       File usersFile = this.getUsersFile();
 
       FileWriter writer = new FileWriter(usersFile);
-      gson.toJson(this.users, this.userType, writer);
+      gson.toJson(new ArrayList<>(this.users.values()), this.userType, writer);
       writer.close();
     } catch (IOException e) {
       e.printStackTrace();
@@ -277,8 +266,9 @@ public class UserDatabase implements Database<User>, Serializable {
       File usersFile = this.getUsersFile();
       // use a buffered reader to read the json file
       BufferedReader reader = new BufferedReader(new FileReader(usersFile));
-      // restore this user database (deserialization)
-      this.users = gson.fromJson(reader, userType);
+      // restore this user database (deserialization) and rebuild the index
+      ArrayList<User> userList = gson.fromJson(reader, userType);
+      this.buildIndex(userList);
       // close the reader
       reader.close();
     } catch (IOException e) {
@@ -302,7 +292,7 @@ public class UserDatabase implements Database<User>, Serializable {
   @Override
   public String toString() {
     String message = "[User Database]\n";
-    for (User user : this.users) {
+    for (User user : this.users.values()) {
       message += user.toString() + "\n";
     }
     return message;
@@ -6,6 +6,8 @@ import java.util.ArrayList;
 import backend.Admin;
 import backend.Flight;
 import backend.User;
+import search.ItineraryQuery;
+import search.ItinerarySearchResult;
 
 /**
  * A Driver used for autotesting the project backend.
@@ -109,13 +111,30 @@ public class Driver {
    * followed by total duration (on its own line, in format HH:MM).
    */
   public static String getItineraries(String date, String origin, String destination) {
-    // create a temporary admin
-    Admin temp = new Admin(null, null, "qwertyqwerty", null, null, null);
-    // use temporary admin to get itineraries
-    String itineraries = temp.getItineraries(date, origin, destination);
-    // remove the temp admin from the user database
-    Admin.removeAdmin(temp);
-    return itineraries;
+    // search for the itineraries without going through a user
+    ItinerarySearchResult result = User.searchItineraries(
+            new ItineraryQuery(date, origin, destination));
+    return result.toString();
+  }
+
+  /**
+   * Returns one page of the itineraries getItineraries produces: at most limit itineraries,
+   * starting with the one at the given offset. Only as much of the flights as needed to fill
+   * the page is searched.
+   *
+   * @param date        a departure date (in the format YYYY-MM-DD)
+   * @param origin      a flight original
+   * @param destination a flight destination
+   * @param offset      the number of itineraries to skip
+   * @param limit       the largest number of itineraries to return
+   * @return the page of itineraries, in the same format as getItineraries.
+   */
+  public static String getItineraries(String date, String origin, String destination,
+                                      int offset, int limit) {
+    // search only as far as the end of the page
+    ItinerarySearchResult result = User.searchItineraryPage(
+            new ItineraryQuery(date, origin, destination), offset, limit);
+    return result.toString();
   }
 
   /**
@@ -133,13 +152,11 @@ public class Driver {
    * followed by total duration (on its own line, in format HH:MM).
    */
   public static String getItinerariesSortedByCost(String date, String origin, String destination) {
-    // create a temporary admin to search
-    Admin temp = new Admin(null, null, "qwertyqwerty", null, null, null);
-    // use temporary admin to get itineraries
-    String itineraries = temp.getItinerariesSortedByCost(date, origin, destination);
-    // remove the temp admin from the user database
-    Admin.removeAdmin(temp);
-    return itineraries;
+    // search for the itineraries without going through a user and sort them
+    ItinerarySearchResult result = User.searchItineraries(
+            new ItineraryQuery(date, origin, destination));
+    result.sortByTotalCost();
+    return result.toString();
   }
 
   /**
@@ -157,12 +174,10 @@ public class Driver {
    * followed by total duration (on its own line, in format HH:MM).
    */
   public static String getItinerariesSortedByTime(String date, String origin, String destination) {
-    // create a temporary admin to search
-    Admin temp = new Admin(null, null, "qwertyqwerty", null, null, null);
-    // use temporary admin to get itineraries
-    String itineraries = temp.getItinerariesSortedByTime(date, origin, destination);
-    // remove the temp admin from the user database
-    Admin.removeAdmin(temp);
-    return itineraries;
+    // search for the itineraries without going through a user and sort them
+    ItinerarySearchResult result = User.searchItineraries(
+            new ItineraryQuery(date, origin, destination));
+    result.sortByTravelTime();
+    return result.toString();
   }
 }
@@ -0,0 +1,252 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+/**
+ * A bidirectional search for the itineraries of a query. The flights that can be reached from
+ * the origin on the date of the query are found by expanding forward from the origin, and the
+ * flights that can still reach the destination are found by expanding backward from the
+ * destination through the flights that arrive at each airport. The two sides are expanded in
+ * turn, one flight deeper at a time, always growing the side with the smaller frontier, and a
+ * side that finishes first limits the other to the flights it found.
+ * <p/>
+ * No flight of an itinerary departs later than the end of the date of the query or the longest
+ * wait after a flight reached going forward, so the flights arriving at the destination only
+ * start the backward side once the forward side has reached far enough to take them. The ones
+ * it never reaches are never expanded.
+ * <p/>
+ * The itineraries are then put together from the flights both sides found: a partial itinerary
+ * from the origin is only continued at an intermediate airport by a flight that can still reach
+ * the destination, and only if the wait between the two flights is valid. Airports that never
+ * lead to the destination are never searched past, and the itineraries come out in the same
+ * order as {@link ItinerarySearchService#search(ItineraryQuery)} returns them.
+ */
+class BidirectionalItinerarySearch {
+
+  // the number of minutes in a day
+  private static final long MINUTES_PER_DAY = 24 * 60;
+  // the allowed wait times between flights in minutes
+  private static final long MIN_WAIT = Math.round(Itinerary.MIN_WAIT_TIME * 60);
+  private static final long MAX_WAIT = Math.round(Itinerary.MAX_WAIT_TIME * 60);
+
+  private final FlightDatabase flightDatabase;
+  private final ItineraryQuery query;
+  // the fewest flights from the origin to the end of each flight reached going forward, keyed
+  // by flight number
+  private final HashMap<String, Integer> forward = new HashMap<String, Integer>();
+  // the fewest flights from the start of each flight reached going backward to the
+  // destination, keyed by flight number
+  private final HashMap<String, Integer> backward = new HashMap<String, Integer>();
+  // the latest departure a flight of an itinerary can have, given the flights reached going
+  // forward so far
+  private long horizon;
+
+  /**
+   * Creates a new bidirectional search for the given query.
+   *
+   * @param flightDatabase the database of the flights to search.
+   * @param query          the query to search for.
+   */
+  BidirectionalItinerarySearch(FlightDatabase flightDatabase, ItineraryQuery query) {
+    this.flightDatabase = flightDatabase;
+    this.query = query;
+  }
+
+  /**
+   * Returns all the valid itineraries for the query, in the same order as the depth first
+   * search.
+   *
+   * @return the valid itineraries for the query.
+   */
+  ArrayList<Itinerary> search() {
+    this.meet();
+    ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+    this.join(this.query.getOriginId(), null, new BitSet(), itineraries);
+    return itineraries;
+  }
+
+  /**
+   * Expands both sides until neither can grow. The forward side starts with the first flights
+   * of the query and the backward side with the flights that arrive at the destination, each
+   * taken once it departs before the horizon of the forward side.
+   */
+  private void meet() {
+    // flights departing before the date of the query can't be part of an itinerary
+    long startOfDate = Flight.minutesOf(this.query.getDate() + " 00:00");
+    this.horizon = startOfDate + MINUTES_PER_DAY - 1;
+    ArrayList<Flight> forwardFrontier = new ArrayList<Flight>();
+    for (Flight flight : this.query.nextFlights(this.flightDatabase, null)) {
+      this.forward.put(flight.getFlightnum(), 1);
+      this.horizon = Math.max(this.horizon, flight.getArrivalMinutes() + MAX_WAIT);
+      forwardFrontier.add(flight);
+    }
+    // the flights arriving at the destination, in order of departure, waiting for the horizon
+    // to reach them
+    ArrayList<Flight> seeds = new ArrayList<Flight>();
+    for (Flight flight : this.flightDatabase.getFlightsOfDestination(this.query.getDestination())) {
+      if (this.query.canTake(flight) && flight.getDepartureMinutes() >= startOfDate) {
+        seeds.add(flight);
+      }
+    }
+    Collections.sort(seeds, new Comparator<Flight>() {
+      @Override
+      public int compare(Flight flight1, Flight flight2) {
+        return Long.compare(flight1.getDepartureMinutes(), flight2.getDepartureMinutes());
+      }
+    });
+    ArrayList<Flight> backwardFrontier = new ArrayList<Flight>();
+    int seeded = this.seedBackward(seeds, 0, backwardFrontier);
+
+    boolean forwardDone = forwardFrontier.isEmpty();
+    boolean backwardDone = false;
+    int forwardDepth = 1;
+    while (!forwardDone || !backwardDone) {
+      // grow the side with the smaller frontier, since it has less to look at
+      if (!forwardDone && (backwardFrontier.isEmpty()
+              || forwardFrontier.size() <= backwardFrontier.size())) {
+        forwardFrontier = this.expandForward(forwardFrontier, ++forwardDepth, backwardDone);
+        forwardDone = forwardFrontier.isEmpty();
+        // the horizon may have reached more flights arriving at the destination
+        seeded = this.seedBackward(seeds, seeded, backwardFrontier);
+      } else {
+        backwardFrontier = this.expandBackward(backwardFrontier, startOfDate, forwardDone);
+      }
+      // once the forward side is done, the flights past the horizon are never taken
+      backwardDone = backwardFrontier.isEmpty() && (forwardDone || seeded == seeds.size());
+    }
+  }
+
+  /**
+   * Adds the flights arriving at the destination that depart before the horizon to the backward
+   * side.
+   *
+   * @param seeds    the flights arriving at the destination, in order of departure.
+   * @param seeded   the number of seeds already added.
+   * @param frontier the backward frontier to add the seeds to.
+   * @return the number of seeds added so far.
+   */
+  private int seedBackward(ArrayList<Flight> seeds, int seeded, ArrayList<Flight> frontier) {
+    while (seeded < seeds.size() && seeds.get(seeded).getDepartureMinutes() <= this.horizon) {
+      Flight flight = seeds.get(seeded++);
+      this.backward.put(flight.getFlightnum(), 1);
+      frontier.add(flight);
+    }
+    return seeded;
+  }
+
+  /**
+   * Adds the flights that can follow the flights of the forward frontier and haven't been
+   * reached going forward yet, and moves the horizon past them.
+   *
+   * @param frontier     the flights reached last going forward.
+   * @param depth        the number of flights from the origin to the end of the new flights.
+   * @param backwardDone true if the backward side is finished, so only the flights it found
+   *                     are worth adding.
+   * @return the new frontier.
+   */
+  private ArrayList<Flight> expandForward(ArrayList<Flight> frontier, int depth,
+                                          boolean backwardDone) {
+    ArrayList<Flight> next = new ArrayList<Flight>();
+    if (depth > this.query.getMaxLegs()) {
+      return next;
+    }
+    for (Flight previous : frontier) {
+      // itineraries end at the destination
+      if (this.query.endsWith(previous)) {
+        continue;
+      }
+      for (Flight flight : this.query.nextFlights(this.flightDatabase, previous)) {
+        String flightNum = flight.getFlightnum();
+        if (!this.forward.containsKey(flightNum)
+                && (!backwardDone || this.backward.containsKey(flightNum))) {
+          this.forward.put(flightNum, depth);
+          this.horizon = Math.max(this.horizon, flight.getArrivalMinutes() + MAX_WAIT);
+          next.add(flight);
+        }
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Adds the flights that can come before the flights of the backward frontier, unless they
+   * were already reached going backward in as few flights. The flights arriving at an airport
+   * within the allowed wait before a flight come from the arrival index of the flight database.
+   * The seeds join the backward side at different times, so a flight can be reached again in
+   * fewer flights, and it is then expanded again.
+   *
+   * @param frontier    the flights reached last going backward.
+   * @param startOfDate the start of the date of the query in minutes.
+   * @param forwardDone true if the forward side is finished, so only the flights it found are
+   *                    worth adding.
+   * @return the new frontier.
+   */
+  private ArrayList<Flight> expandBackward(ArrayList<Flight> frontier, long startOfDate,
+                                           boolean forwardDone) {
+    ArrayList<Flight> next = new ArrayList<Flight>();
+    for (Flight later : frontier) {
+      int depth = this.backward.get(later.getFlightnum()) + 1;
+      // itineraries never come back to the origin
+      if (depth > this.query.getMaxLegs() || later.getOriginId() == this.query.getOriginId()) {
+        continue;
+      }
+      for (Flight flight : this.flightDatabase.getFlightsArrivingBetween(later.getOrigin(),
+              later.getDepartureMinutes() - MAX_WAIT, later.getDepartureMinutes() - MIN_WAIT)) {
+        String flightNum = flight.getFlightnum();
+        Integer known = this.backward.get(flightNum);
+        if ((known == null || known > depth)
+                && (!forwardDone || this.forward.containsKey(flightNum))
+                && this.query.canTake(flight) && flight.getDepartureMinutes() >= startOfDate
+                && Itinerary.isValidConnection(flight, later)
+                && this.query.withinLayoverLimit(flight, later)) {
+          this.backward.put(flightNum, depth);
+          next.add(flight);
+        }
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Adds the itineraries that continue the given partial itinerary with flights both sides of
+   * the search found. A flight is only taken if the shortest way from it to the destination
+   * keeps the itinerary within the limits of the query.
+   *
+   * @param location    the id of the location the partial itinerary arrived at.
+   * @param path        the partial itinerary (null if there are no flights yet).
+   * @param visited     the ids of the locations that have already been visited.
+   * @param itineraries the list to add the itineraries to.
+   */
+  private void join(int location, PathNode path, BitSet visited,
+                    ArrayList<Itinerary> itineraries) {
+    Flight previous = path == null ? null : path.getFlight();
+    int legs = path == null ? 0 : path.getLegs();
+    visited.set(location);
+    for (Flight flight : this.query.nextFlights(this.flightDatabase, previous)) {
+      Integer toDestination = this.backward.get(flight.getFlightnum());
+      // skip the flights that can't reach the destination from here
+      if (toDestination == null || !this.forward.containsKey(flight.getFlightnum())
+              || legs + toDestination > this.query.getMaxLegs()) {
+        continue;
+      }
+      PathNode next = new PathNode(flight, path);
+      if (!next.isWithinLimits(this.query)) {
+        continue;
+      }
+      if (this.query.endsWith(flight)) {
+        itineraries.add(next.toItinerary());
+      } else if (!visited.get(flight.getDestinationId())) {
+        this.join(flight.getDestinationId(), next, visited, itineraries);
+      }
+    }
+    visited.clear(location);
+  }
+}
@@ -0,0 +1,133 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+/**
+ * A best-first search for the cheapest itineraries of a query. Partial itineraries are expanded
+ * in order of their cost so far, and since flight costs are never negative, the complete
+ * itineraries come out of the queue in non-decreasing order of total cost. The search stops as
+ * soon as it has the number of itineraries asked for.
+ */
+class CheapestFirstSearch {
+
+  private final FlightDatabase flightDatabase;
+  private final ItineraryQuery query;
+  // the number of partial itineraries queued so far, used to break ties in cost
+  private long queued = 0;
+
+  /**
+   * A partial itinerary waiting in the queue.
+   */
+  private static class Label {
+
+    private final PathNode path;
+    private final BitSet visited;
+    private final double cost;
+    private final boolean complete;
+    private final long order;
+
+    /**
+     * Creates a new label.
+     *
+     * @param path      the flights of the partial itinerary.
+     * @param visited   the ids of the locations that have been visited (not counting the last
+     *                  arrival).
+     * @param cost      the total cost of the flights.
+     * @param complete  true if the last flight arrives at the destination.
+     * @param order     the order in which the label was queued.
+     */
+    private Label(PathNode path, BitSet visited, double cost, boolean complete, long order) {
+      this.path = path;
+      this.visited = visited;
+      this.cost = cost;
+      this.complete = complete;
+      this.order = order;
+    }
+  }
+
+  // cheapest label first, and the earliest queued first for the same cost
+  private static final Comparator<Label> CHEAPEST_FIRST = new Comparator<Label>() {
+    @Override
+    public int compare(Label label1, Label label2) {
+      int result = Double.compare(label1.cost, label2.cost);
+      if (result == 0) {
+        result = label1.order < label2.order ? -1 : (label1.order == label2.order ? 0 : 1);
+      }
+      return result;
+    }
+  };
+
+  /**
+   * Creates a new cheapest first search for the given query.
+   *
+   * @param flightDatabase the database of the flights to search.
+   * @param query          the query to search for.
+   */
+  CheapestFirstSearch(FlightDatabase flightDatabase, ItineraryQuery query) {
+    this.flightDatabase = flightDatabase;
+    this.query = query;
+  }
+
+  /**
+   * Returns the k cheapest valid itineraries for the query in non-decreasing order of cost.
+   *
+   * @param k the number of itineraries to return.
+   * @return the k cheapest valid itineraries (fewer if there aren't k).
+   */
+  ArrayList<Itinerary> search(int k) {
+    ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+    if (k <= 0) {
+      return itineraries;
+    }
+    PriorityQueue<Label> queue = new PriorityQueue<Label>(11, CHEAPEST_FIRST);
+    // the first flights leave from the origin
+    BitSet start = new BitSet();
+    start.set(this.query.getOriginId());
+    this.expand(queue, null, start, 0);
+
+    while (!queue.isEmpty()) {
+      Label label = queue.poll();
+      if (label.complete) {
+        // no cheaper itinerary is left in the queue, so this one is the next cheapest
+        itineraries.add(label.path.toItinerary());
+        if (itineraries.size() == k) {
+          break;
+        }
+      } else {
+        BitSet visited = (BitSet) label.visited.clone();
+        visited.set(label.path.getFlight().getDestinationId());
+        this.expand(queue, label.path, visited, label.cost);
+      }
+    }
+    return itineraries;
+  }
+
+  /**
+   * Queues every flight that can follow the partial itinerary.
+   *
+   * @param queue     the queue of partial itineraries.
+   * @param path      the flights of the partial itinerary (null if there are none).
+   * @param visited   the ids of the locations that have been visited, including the last
+   *                  arrival.
+   * @param cost      the total cost of the partial itinerary.
+   */
+  private void expand(PriorityQueue<Label> queue, PathNode path, BitSet visited, double cost) {
+    Flight previous = path == null ? null : path.getFlight();
+    for (Flight flight : this.query.nextFlights(this.flightDatabase, previous)) {
+      PathNode next = new PathNode(flight, path);
+      boolean complete = this.query.endsWith(flight);
+      // don't go past the limits of the query or back to a location that was already visited
+      if (next.isWithinLimits(this.query)
+              && (complete || !visited.get(flight.getDestinationId()))) {
+        queue.add(new Label(next, visited, cost + flight.getCost(), complete, this.queued++));
+      }
+    }
+  }
+}
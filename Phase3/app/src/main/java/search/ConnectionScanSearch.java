@@ -0,0 +1,326 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+/**
+ * A connection scan search for the fastest itineraries of a query. The flights are scanned once
+ * in order of departure, starting on the date of the query. Each flight that can be reached is
+ * labelled with the best partial itineraries that end with it, where a partial itinerary is
+ * better if it started later (and so has spent less time travelling). A partial itinerary is
+ * only dropped once k others that end with the same flight are at least as good in every way
+ * that decides how it can go on: they started no earlier, visited no other locations, and cost
+ * no more and took no more flights when the query limits those. A flight can only be
+ * reached from flights that arrive at its origin within the allowed wait times, so the labels of
+ * a flight only depend on flights that were scanned before it.
+ * <p/>
+ * The scan stops once the flights depart after the date of the query and too late to connect
+ * with any flight that was reached.
+ */
+class ConnectionScanSearch {
+
+  // the number of minutes in a day
+  private static final long MINUTES_PER_DAY = 24 * 60;
+  // the allowed wait times between flights in minutes
+  private static final long MIN_WAIT = Math.round(Itinerary.MIN_WAIT_TIME * 60);
+  private static final long MAX_WAIT = Math.round(Itinerary.MAX_WAIT_TIME * 60);
+
+  private final FlightDatabase flightDatabase;
+  private final ItineraryQuery query;
+  // the number of labels made so far, used to break ties
+  private long labelled = 0;
+
+  /**
+   * A partial itinerary that ends with a flight. The earlier flights are found by following
+   * the parent labels.
+   */
+  private static class Label {
+
+    private final Flight flight;
+    private final Label parent;
+    private final long start;
+    private final long arrival;
+    private final int legs;
+    private final double cost;
+    private final long order;
+    // the ids of the locations the partial itinerary has departed from
+    private final BitSet locations;
+
+    /**
+     * Creates a new label for the partial itinerary that continues the parent with the flight.
+     *
+     * @param flight  the last flight of the partial itinerary.
+     * @param parent  the partial itinerary before the flight (null if the flight is the first).
+     * @param start   the first departure of the partial itinerary in minutes.
+     * @param arrival the arrival of the flight in minutes.
+     * @param order   the order in which the label was made.
+     */
+    private Label(Flight flight, Label parent, long start, long arrival, long order) {
+      this.flight = flight;
+      this.parent = parent;
+      this.start = start;
+      this.arrival = arrival;
+      this.legs = parent == null ? 1 : parent.legs + 1;
+      this.cost = parent == null ? flight.getCost() : parent.cost + flight.getCost();
+      this.order = order;
+      this.locations = parent == null ? new BitSet() : (BitSet) parent.locations.clone();
+      this.locations.set(flight.getOriginId());
+    }
+
+    /**
+     * Returns true if the partial itinerary has been at the given location.
+     *
+     * @param location the id of the location to check.
+     * @return true if the partial itinerary has been at the location.
+     */
+    private boolean visits(int location) {
+      return this.locations.get(location);
+    }
+
+    /**
+     * Returns the itinerary of the flights of this label.
+     *
+     * @return the itinerary of the flights of this label.
+     */
+    private Itinerary toItinerary() {
+      ArrayList<Flight> flights = new ArrayList<Flight>(this.legs);
+      for (Label label = this; label != null; label = label.parent) {
+        flights.add(label.flight);
+      }
+      Collections.reverse(flights);
+      return new Itinerary(flights);
+    }
+  }
+
+  // the latest start first, then the fewest flights, then the earliest made
+  private static final Comparator<Label> LATEST_START_FIRST = new Comparator<Label>() {
+    @Override
+    public int compare(Label label1, Label label2) {
+      if (label1.start != label2.start) {
+        return label1.start > label2.start ? -1 : 1;
+      } else if (label1.legs != label2.legs) {
+        return label1.legs < label2.legs ? -1 : 1;
+      } else {
+        return label1.order < label2.order ? -1 : (label1.order == label2.order ? 0 : 1);
+      }
+    }
+  };
+
+  // the shortest travel time first, then the same order as above
+  private static final Comparator<Label> FASTEST_FIRST = new Comparator<Label>() {
+    @Override
+    public int compare(Label label1, Label label2) {
+      long time1 = label1.arrival - label1.start;
+      long time2 = label2.arrival - label2.start;
+      if (time1 != time2) {
+        return time1 < time2 ? -1 : 1;
+      }
+      return LATEST_START_FIRST.compare(label1, label2);
+    }
+  };
+
+  // the earliest arrival first, then the same order as above
+  private static final Comparator<Label> EARLIEST_ARRIVAL_FIRST = new Comparator<Label>() {
+    @Override
+    public int compare(Label label1, Label label2) {
+      if (label1.arrival != label2.arrival) {
+        return label1.arrival < label2.arrival ? -1 : 1;
+      }
+      return LATEST_START_FIRST.compare(label1, label2);
+    }
+  };
+
+  /**
+   * Creates a new connection scan search for the given query.
+   *
+   * @param flightDatabase the database of the flights to search.
+   * @param query          the query to search for.
+   */
+  ConnectionScanSearch(FlightDatabase flightDatabase, ItineraryQuery query) {
+    this.flightDatabase = flightDatabase;
+    this.query = query;
+  }
+
+  /**
+   * Returns the valid itinerary for the query that arrives at the destination the earliest.
+   *
+   * @return the itinerary that arrives the earliest (empty if there is none).
+   */
+  ArrayList<Itinerary> searchEarliestArrival() {
+    return best(this.scan(1), EARLIEST_ARRIVAL_FIRST, 1);
+  }
+
+  /**
+   * Returns the k valid itineraries for the query with the shortest travel time, in
+   * non-decreasing order of travel time.
+   *
+   * @param k the number of itineraries to return.
+   * @return the k fastest itineraries (fewer if there aren't k).
+   */
+  ArrayList<Itinerary> searchFastest(int k) {
+    return best(this.scan(k), FASTEST_FIRST, k);
+  }
+
+  /**
+   * Returns the itineraries of the k best labels in the given order.
+   *
+   * @param labels the labels of the flights that arrive at the destination.
+   * @param order  the order of the labels.
+   * @param k      the number of itineraries to return.
+   * @return the itineraries of the k best labels.
+   */
+  private static ArrayList<Itinerary> best(ArrayList<Label> labels, Comparator<Label> order,
+                                           int k) {
+    Collections.sort(labels, order);
+    ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+    for (int i = 0; i < labels.size() && i < k; i++) {
+      itineraries.add(labels.get(i).toItinerary());
+    }
+    return itineraries;
+  }
+
+  /**
+   * Returns true if every way the second label can go on is also a way the first label can go
+   * on, and ends up at least as good. The labels must end with the same flight, and the first
+   * must come before the second in {@link #LATEST_START_FIRST} order.
+   *
+   * @param label1 the label that may be at least as good.
+   * @param label2 the label to compare with.
+   * @return true if the first label is at least as good as the second.
+   */
+  private boolean dominates(Label label1, Label label2) {
+    // the cost and number of flights only matter when the query limits them
+    if (this.query.getMaxPrice() < Double.POSITIVE_INFINITY && label1.cost > label2.cost) {
+      return false;
+    }
+    if (this.query.getMaxLegs() < Integer.MAX_VALUE && label1.legs > label2.legs) {
+      return false;
+    }
+    // the first label must not have visited a location the second can still go to
+    BitSet extra = (BitSet) label1.locations.clone();
+    extra.andNot(label2.locations);
+    return label1.start >= label2.start && extra.isEmpty();
+  }
+
+  /**
+   * Returns the labels of a flight that aren't dominated by k other labels of the flight, in
+   * {@link #LATEST_START_FIRST} order. Every way on from a dropped label is matched by a way on
+   * from each of the k labels that dominate it, which is valid and at least as good, so the k
+   * best itineraries never need a dropped label.
+   *
+   * @param labels the labels of the flight.
+   * @param k      the number of itineraries being searched for.
+   * @return the labels to keep.
+   */
+  private ArrayList<Label> keep(ArrayList<Label> labels, int k) {
+    Collections.sort(labels, LATEST_START_FIRST);
+    ArrayList<Label> kept = new ArrayList<Label>();
+    for (Label label : labels) {
+      // a label can only be dominated by the labels before it, and a dropped label is dominated
+      // by k kept ones, which then dominate anything it dominates, so only the kept ones count
+      int dominated = 0;
+      for (int i = 0; i < kept.size() && dominated < k; i++) {
+        if (this.dominates(kept.get(i), label)) {
+          dominated++;
+        }
+      }
+      if (dominated < k) {
+        kept.add(label);
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Scans the flights in order of departure and returns the labels of the flights that arrive at
+   * the destination. Every flight keeps the labels that aren't dominated by k others.
+   *
+   * @param k the number of labels to keep for every flight.
+   * @return the labels of the flights that arrive at the destination.
+   */
+  private ArrayList<Label> scan(int k) {
+    ArrayList<Label> arrived = new ArrayList<Label>();
+    if (k <= 0) {
+      return arrived;
+    }
+    // the labels of the reached flights at every location, keyed by the id of the location and
+    // then arrival time
+    HashMap<Integer, TreeMap<Long, List<Label>>> arrivals =
+            new HashMap<Integer, TreeMap<Long, List<Label>>>();
+    // flights departing after the end of the date can't be first flights
+    long endOfDate = Flight.minutesOf(this.query.getDate() + " 00:00") + MINUTES_PER_DAY;
+    // the latest departure that can still connect with a reached flight
+    long horizon = Long.MIN_VALUE;
+
+    Iterator<Flight> flights = this.flightDatabase.getFlightsByDeparture(this.query.getDate());
+    while (flights.hasNext()) {
+      Flight flight = flights.next();
+      long departure = flight.getDepartureMinutes();
+      if (departure >= endOfDate && departure > horizon) {
+        // nothing that departs from here on can be part of an itinerary
+        break;
+      }
+      if (!this.query.canTake(flight)) {
+        continue;
+      }
+      long arrival = flight.getArrivalMinutes();
+      ArrayList<Label> labels = new ArrayList<Label>();
+      // the flight can start an itinerary
+      if (flight.getOriginId() == this.query.getOriginId()
+              && this.query.canFollow(null, flight)
+              && this.query.withinLimits(1, flight.getCost(), departure, flight)) {
+        labels.add(new Label(flight, null, departure, arrival, this.labelled++));
+      }
+      // the flight can continue the itineraries of the flights that arrive at its origin
+      // within the allowed wait times
+      TreeMap<Long, List<Label>> waiting = arrivals.get(flight.getOriginId());
+      if (waiting != null) {
+        for (List<Label> parents : waiting.subMap(departure - MAX_WAIT, true,
+                departure - MIN_WAIT, true).values()) {
+          for (Label parent : parents) {
+            // don't go back to a location that was already visited, or past the limits of the
+            // query
+            if (!parent.visits(flight.getDestinationId())
+                    && this.query.withinLayoverLimit(parent.flight, flight)
+                    && this.query.withinLimits(parent.legs + 1, parent.cost + flight.getCost(),
+                    parent.start, flight)) {
+              labels.add(new Label(flight, parent, parent.start, arrival, this.labelled++));
+            }
+          }
+        }
+      }
+      if (labels.isEmpty()) {
+        continue;
+      }
+      ArrayList<Label> kept = this.keep(labels, k);
+      if (this.query.endsWith(flight)) {
+        // itineraries end at the destination
+        arrived.addAll(kept);
+      } else {
+        TreeMap<Long, List<Label>> byArrival = arrivals.get(flight.getDestinationId());
+        if (byArrival == null) {
+          byArrival = new TreeMap<Long, List<Label>>();
+          arrivals.put(flight.getDestinationId(), byArrival);
+        }
+        List<Label> atArrival = byArrival.get(arrival);
+        if (atArrival == null) {
+          atArrival = new ArrayList<Label>();
+          byArrival.put(arrival, atArrival);
+        }
+        atArrival.addAll(kept);
+        horizon = Math.max(horizon, arrival + MAX_WAIT);
+      }
+    }
+    return arrived;
+  }
+}
@@ -0,0 +1,220 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+/**
+ * Goes through the valid itineraries for a query one at a time, in the same order as
+ * {@link ItinerarySearchService#search(ItineraryQuery)} returns them. The flights are only
+ * searched as far as needed to find the next itinerary, so the first itineraries can be shown
+ * before the rest are found, and only the current flight combination is kept in memory.
+ * <p/>
+ * The search keeps its own stack of locations rather than recursing, and the limits of the
+ * query are checked before a flight is added, so a search with a limit on the number of flights
+ * never goes deeper than that limit, and a search with a limit on the travel time or the total
+ * cost never looks past flights that land too late or cost too much.
+ */
+public class ItineraryIterator implements Iterator<Itinerary> {
+
+  private final FlightDatabase flightDatabase;
+  private final ItineraryQuery query;
+  // the locations being searched from, the last one on top
+  private final ArrayList<Frame> frames = new ArrayList<Frame>();
+  // the flights taken to get to the location on top
+  private final ArrayList<Flight> flights = new ArrayList<Flight>();
+  // the ids of the locations that have already been visited
+  private final BitSet visited = new BitSet();
+  // the ids of the locations whose departures have been searched
+  private final BitSet searched = new BitSet();
+  // the next itinerary to return, or null if it hasn't been found yet
+  private Itinerary next;
+
+  /**
+   * A location being searched from: the flights that can be taken from it and how far along
+   * them the search is.
+   */
+  private static class Frame {
+
+    private final int location;
+    private final Flight previous;
+    private final ArrayList<Flight> departures;
+    // the total cost of the flights taken to get to the location
+    private final double cost;
+    private int index = 0;
+
+    /**
+     * Creates a new frame.
+     *
+     * @param location   the id of the location.
+     * @param previous   the flight that arrived at the location (null for the origin).
+     * @param departures the flights that can be taken from the location.
+     * @param cost       the total cost of the flights taken to get to the location.
+     */
+    private Frame(int location, Flight previous, ArrayList<Flight> departures, double cost) {
+      this.location = location;
+      this.previous = previous;
+      this.departures = departures;
+      this.cost = cost;
+    }
+  }
+
+  /**
+   * Creates a new iterator over the valid itineraries for the given query.
+   *
+   * @param flightDatabase the database of the flights to search.
+   * @param query          the query to search for.
+   */
+  ItineraryIterator(FlightDatabase flightDatabase, ItineraryQuery query) {
+    this.flightDatabase = flightDatabase;
+    this.query = query;
+    // a query for an airport no flight has used has no itineraries to go through
+    if (query.hasKnownAirports()) {
+      this.push(query.getOriginId(), null, 0);
+    }
+  }
+
+  /**
+   * Returns true if there is another valid itinerary.
+   *
+   * @return true if there is another valid itinerary.
+   */
+  @Override
+  public boolean hasNext() {
+    if (this.next == null) {
+      this.next = this.findNext();
+    }
+    return this.next != null;
+  }
+
+  /**
+   * Returns the next valid itinerary.
+   *
+   * @return the next valid itinerary.
+   */
+  @Override
+  public Itinerary next() {
+    if (!this.hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Itinerary itinerary = this.next;
+    this.next = null;
+    return itinerary;
+  }
+
+  /**
+   * Itineraries can't be removed from a search.
+   */
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Skips over the given number of itineraries, or all of them if there are fewer.
+   *
+   * @param count the number of itineraries to skip.
+   * @return the number of itineraries that were skipped.
+   */
+  public int skip(int count) {
+    int skipped = 0;
+    while (skipped < count && this.hasNext()) {
+      this.next = null;
+      skipped++;
+    }
+    return skipped;
+  }
+
+  /**
+   * Returns the next valid itineraries, at most limit of them.
+   *
+   * @param limit the largest number of itineraries to return.
+   * @return the next valid itineraries.
+   */
+  public ArrayList<Itinerary> next(int limit) {
+    ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+    while (itineraries.size() < limit && this.hasNext()) {
+      itineraries.add(this.next());
+    }
+    return itineraries;
+  }
+
+  /**
+   * Returns the ids of the locations whose departures have been searched so far.
+   *
+   * @return the ids of the locations that have been searched.
+   */
+  BitSet getSearchedLocations() {
+    return searched;
+  }
+
+  /**
+   * Continues the search until the next valid itinerary is found.
+   *
+   * @return the next valid itinerary, or null if there are no more.
+   */
+  private Itinerary findNext() {
+    while (!this.frames.isEmpty()) {
+      Frame frame = this.frames.get(this.frames.size() - 1);
+      // go back to the previous location once every flight from here has been looked at
+      if (frame.index == frame.departures.size()) {
+        this.pop();
+        continue;
+      }
+      Flight flight = frame.departures.get(frame.index++);
+      // skip the flight if it takes the itinerary past the limits of the query
+      int legs = this.flights.size() + 1;
+      double cost = frame.cost + flight.getCost();
+      long start = this.flights.isEmpty() ? flight.getDepartureMinutes()
+              : this.flights.get(0).getDepartureMinutes();
+      if (!this.query.withinLimits(legs, cost, start, flight)) {
+        continue;
+      }
+      if (this.query.endsWith(flight)) {
+        // the flight completes an itinerary
+        Itinerary itinerary = new Itinerary(this.flights);
+        itinerary.addFlight(flight);
+        return itinerary;
+      } else if (legs < this.query.getMaxLegs()
+              && !this.visited.get(flight.getDestinationId())) {
+        // otherwise continue from where the flight lands if it hasn't been visited yet and
+        // another flight is allowed
+        this.push(flight.getDestinationId(), flight, cost);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Starts searching from the given location.
+   *
+   * @param location the id of the location to search from.
+   * @param previous the flight that arrived at the location (null for the origin).
+   * @param cost     the total cost of the flights taken to get to the location.
+   */
+  private void push(int location, Flight previous, double cost) {
+    if (previous != null) {
+      this.flights.add(previous);
+    }
+    this.visited.set(location);
+    this.searched.set(location);
+    this.frames.add(new Frame(location, previous,
+            this.query.nextFlights(this.flightDatabase, previous), cost));
+  }
+
+  /**
+   * Stops searching from the location on top and goes back to the one before it.
+   */
+  private void pop() {
+    Frame frame = this.frames.remove(this.frames.size() - 1);
+    this.visited.clear(frame.location);
+    if (frame.previous != null) {
+      this.flights.remove(this.flights.size() - 1);
+    }
+  }
+}
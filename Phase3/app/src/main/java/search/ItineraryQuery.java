@@ -0,0 +1,416 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+/**
+ * A query for itineraries. It holds the date which the itineraries depart on, the origin they
+ * depart from and the destination they arrive at. A query can also limit the number of flights,
+ * the total travel time, the wait between flights and the total cost of its itineraries, and the
+ * airlines their flights can be with. There are no limits unless they are set.
+ * <p/>
+ * The limits are checked while the itineraries are searched for, so a partial itinerary is
+ * dropped as soon as it goes past one of them.
+ */
+public class ItineraryQuery {
+
+  private String date;
+  private String origin;
+  private String destination;
+  // the ids of the origin and destination, looked up the first time they are needed
+  private int originId = -1;
+  private int destinationId = -1;
+  // the limits on the itineraries (the largest values mean no limit)
+  private int maxLegs = Integer.MAX_VALUE;
+  private long maxDurationMinutes = Long.MAX_VALUE;
+  private long maxLayoverMinutes = Long.MAX_VALUE;
+  private double maxCost = Double.POSITIVE_INFINITY;
+  // the airlines the flights can be with (null for any airline) and the ones they can't
+  private TreeSet<String> allowedAirlines = null;
+  private TreeSet<String> excludedAirlines = new TreeSet<String>();
+
+  /**
+   * Creates a new query for itineraries that depart from the origin on the given date and arrive
+   * at the destination.
+   *
+   * @param date        the departure date (in the format YYYY-MM-DD).
+   * @param origin      the location to depart from.
+   * @param destination the location to travel to.
+   */
+  public ItineraryQuery(String date, String origin, String destination) {
+    this.date = date;
+    this.origin = origin;
+    this.destination = destination;
+  }
+
+  /**
+   * Returns a copy of this query for itineraries that depart on the given date instead, with
+   * the same limits.
+   *
+   * @param date the departure date of the copy (in the format YYYY-MM-DD).
+   * @return the copy of this query.
+   */
+  ItineraryQuery onDate(String date) {
+    ItineraryQuery query = new ItineraryQuery(date, this.origin, this.destination);
+    query.maxLegs = this.maxLegs;
+    query.maxDurationMinutes = this.maxDurationMinutes;
+    query.maxLayoverMinutes = this.maxLayoverMinutes;
+    query.maxCost = this.maxCost;
+    query.allowedAirlines = this.allowedAirlines;
+    query.excludedAirlines = this.excludedAirlines;
+    return query;
+  }
+
+  /**
+   * Returns the departure date of this query.
+   *
+   * @return the departure date of this query (in the format YYYY-MM-DD).
+   */
+  public String getDate() {
+    return date;
+  }
+
+  /**
+   * Returns the origin of this query.
+   *
+   * @return the origin of this query.
+   */
+  public String getOrigin() {
+    return origin;
+  }
+
+  /**
+   * Returns the destination of this query.
+   *
+   * @return the destination of this query.
+   */
+  public String getDestination() {
+    return destination;
+  }
+
+  /**
+   * Returns the largest number of flights an itinerary for this query can have.
+   *
+   * @return the largest number of flights (Integer.MAX_VALUE if there is no limit).
+   */
+  public int getMaxLegs() {
+    return maxLegs;
+  }
+
+  /**
+   * Limits the number of flights of the itineraries for this query.
+   *
+   * @param maxLegs the largest number of flights an itinerary can have.
+   */
+  public void setMaxLegs(int maxLegs) {
+    this.maxLegs = maxLegs;
+  }
+
+  /**
+   * Returns the largest number of stops an itinerary for this query can make on the way to the
+   * destination.
+   *
+   * @return the largest number of stops (Integer.MAX_VALUE if there is no limit).
+   */
+  public int getMaxStops() {
+    return this.maxLegs == Integer.MAX_VALUE ? Integer.MAX_VALUE : this.maxLegs - 1;
+  }
+
+  /**
+   * Limits the number of stops the itineraries for this query can make on the way to the
+   * destination. An itinerary with n stops has n + 1 flights.
+   *
+   * @param maxStops the largest number of stops an itinerary can make.
+   */
+  public void setMaxStops(int maxStops) {
+    this.maxLegs = maxStops == Integer.MAX_VALUE ? Integer.MAX_VALUE : maxStops + 1;
+  }
+
+  /**
+   * Returns the largest total cost an itinerary for this query can have.
+   *
+   * @return the largest total cost (infinity if there is no limit).
+   */
+  public double getMaxPrice() {
+    return maxCost;
+  }
+
+  /**
+   * Limits the total cost of the itineraries for this query.
+   *
+   * @param maxPrice the largest total cost an itinerary can have.
+   */
+  public void setMaxPrice(double maxPrice) {
+    this.maxCost = maxPrice;
+  }
+
+  /**
+   * Limits the flights of the itineraries for this query to the given airlines.
+   *
+   * @param airlines the airlines the flights can be with (null for any airline).
+   */
+  public void setAllowedAirlines(Collection<String> airlines) {
+    this.allowedAirlines = airlines == null ? null : new TreeSet<String>(airlines);
+  }
+
+  /**
+   * Keeps the flights of the given airlines out of the itineraries for this query.
+   *
+   * @param airlines the airlines the flights can't be with.
+   */
+  public void setExcludedAirlines(Collection<String> airlines) {
+    this.excludedAirlines = new TreeSet<String>(airlines);
+  }
+
+  /**
+   * Returns the longest total travel time an itinerary for this query can have in hours.
+   *
+   * @return the longest total travel time in hours (infinity if there is no limit).
+   */
+  public double getMaxDuration() {
+    return hoursOf(this.maxDurationMinutes);
+  }
+
+  /**
+   * Limits the total travel time of the itineraries for this query, from the first departure to
+   * the last arrival.
+   *
+   * @param maxDuration the longest total travel time an itinerary can have in hours.
+   */
+  public void setMaxDuration(double maxDuration) {
+    this.maxDurationMinutes = minutesOf(maxDuration);
+  }
+
+  /**
+   * Returns the longest wait between two flights of an itinerary for this query in hours.
+   *
+   * @return the longest wait between two flights in hours (infinity if there is no limit).
+   */
+  public double getMaxLayover() {
+    return hoursOf(this.maxLayoverMinutes);
+  }
+
+  /**
+   * Limits the wait between two flights of the itineraries for this query. Waits are never
+   * allowed to be longer than {@link Itinerary#MAX_WAIT_TIME}, whatever the limit.
+   *
+   * @param maxLayover the longest wait between two flights in hours.
+   */
+  public void setMaxLayover(double maxLayover) {
+    this.maxLayoverMinutes = minutesOf(maxLayover);
+  }
+
+  /**
+   * Returns true if any limit has been set on the itineraries for this query.
+   *
+   * @return true if any limit has been set.
+   */
+  public boolean hasLimits() {
+    return this.maxLegs != Integer.MAX_VALUE || this.maxDurationMinutes != Long.MAX_VALUE
+            || this.maxLayoverMinutes != Long.MAX_VALUE || this.maxCost != Double.POSITIVE_INFINITY
+            || this.allowedAirlines != null || !this.excludedAirlines.isEmpty();
+  }
+
+  /**
+   * Returns the whole number of minutes in the given number of hours, rounded down.
+   *
+   * @param hours a number of hours.
+   * @return the whole number of minutes in the hours.
+   */
+  private static long minutesOf(double hours) {
+    return Double.isInfinite(hours) ? Long.MAX_VALUE : (long) Math.floor(hours * 60);
+  }
+
+  /**
+   * Returns the number of hours in the given number of minutes.
+   *
+   * @param minutes a number of minutes (Long.MAX_VALUE for no limit).
+   * @return the number of hours in the minutes (infinity for no limit).
+   */
+  private static double hoursOf(long minutes) {
+    return minutes == Long.MAX_VALUE ? Double.POSITIVE_INFINITY : minutes / 60.0;
+  }
+
+  /**
+   * Returns the id the flight databases give the origin of this query. Looking it up doesn't
+   * give the origin an id if no flight has ever used it.
+   *
+   * @return the id of the origin of this query, or -1 if no flight has used it.
+   */
+  public int getOriginId() {
+    if (this.originId < 0) {
+      this.originId = FlightDatabase.findAirportId(this.origin);
+    }
+    return this.originId;
+  }
+
+  /**
+   * Returns the id the flight databases give the destination of this query. Looking it up
+   * doesn't give the destination an id if no flight has ever used it.
+   *
+   * @return the id of the destination of this query, or -1 if no flight has used it.
+   */
+  public int getDestinationId() {
+    if (this.destinationId < 0) {
+      this.destinationId = FlightDatabase.findAirportId(this.destination);
+    }
+    return this.destinationId;
+  }
+
+  /**
+   * Returns true if flights have used both the origin and the destination of this query. If
+   * not, the query has no itineraries.
+   *
+   * @return true if the origin and destination of this query are known airports.
+   */
+  public boolean hasKnownAirports() {
+    return this.getOriginId() >= 0 && this.getDestinationId() >= 0;
+  }
+
+  /**
+   * Returns true if the given flight arrives at the destination of this query.
+   *
+   * @param flight a flight in a flight database.
+   * @return true if the flight arrives at the destination of this query.
+   */
+  public boolean endsWith(Flight flight) {
+    return flight.getDestinationId() == this.getDestinationId();
+  }
+
+  /**
+   * Returns true if the given flight can be part of an itinerary for this query at all. That
+   * is, the flight must have room, be with an allowed airline and cost no more than the limit of
+   * this query.
+   *
+   * @param flight the flight to check.
+   * @return true if the flight can be part of an itinerary for this query.
+   */
+  public boolean canTake(Flight flight) {
+    return !flight.isfull() && flight.getCost() <= this.maxCost
+            && (this.allowedAirlines == null || this.allowedAirlines.contains(flight.getAirline()))
+            && !this.excludedAirlines.contains(flight.getAirline());
+  }
+
+  /**
+   * Returns true if the given flight can be the first flight of an itinerary for this query.
+   * That is, the flight must have room and depart on the date of this query.
+   *
+   * @param flight the flight to check.
+   * @return true if the flight can be the first flight of an itinerary.
+   */
+  public boolean canStartWith(Flight flight) {
+    // the departure is the date followed by a space and the time
+    String departure = flight.getDepartureDateTime();
+    return this.canTake(flight) && departure.startsWith(this.date)
+            && departure.length() > this.date.length()
+            && departure.charAt(this.date.length()) == ' ';
+  }
+
+  /**
+   * Returns true if the given flight can be the next flight of an itinerary for this query whose
+   * latest flight is the given previous flight. That is, the flight must have room, and it must
+   * either be the first flight and depart on the date of this query, or form a valid connection
+   * with the previous flight.
+   *
+   * @param previous the latest flight of the itinerary so far (null if there is none).
+   * @param flight   the flight to check.
+   * @return true if the flight can be the next flight of the itinerary.
+   */
+  public boolean canFollow(Flight previous, Flight flight) {
+    if (previous == null) {
+      return this.canStartWith(flight);
+    } else {
+      return this.canTake(flight) && Itinerary.isValidConnection(previous, flight)
+              && this.withinLayoverLimit(previous, flight);
+    }
+  }
+
+  /**
+   * Returns true if the wait between the two flights is within the limit of this query. The
+   * flights are assumed to form a valid connection.
+   *
+   * @param previous the earlier flight.
+   * @param flight   the later flight.
+   * @return true if the wait between the flights is within the limit.
+   */
+  public boolean withinLayoverLimit(Flight previous, Flight flight) {
+    return flight.getDepartureMinutes() - previous.getArrivalMinutes()
+            <= this.maxLayoverMinutes;
+  }
+
+  /**
+   * Returns true if a partial itinerary is within the limits of this query on the number of
+   * flights, the total cost and the total travel time. Adding flights never brings a partial
+   * itinerary back within the limits, so a partial itinerary that isn't can be dropped.
+   *
+   * @param legs  the number of flights of the partial itinerary.
+   * @param cost  the total cost of the partial itinerary.
+   * @param start the first departure of the partial itinerary in minutes.
+   * @param last  the last flight of the partial itinerary.
+   * @return true if the partial itinerary is within the limits.
+   */
+  public boolean withinLimits(int legs, double cost, long start, Flight last) {
+    return legs <= this.maxLegs && cost <= this.maxCost
+            && last.getArrivalMinutes() - start <= this.maxDurationMinutes;
+  }
+
+  /**
+   * Returns the flights of the given database that can follow the previous flight in an
+   * itinerary for this query, in the order the database keeps the departures of their origin.
+   * The first flights come from the origin and departure date index and the later ones from
+   * the connections the database keeps for the previous flight, so wait times only have to
+   * be checked against the limit of this query.
+   *
+   * @param flightDatabase the database of the flights to search.
+   * @param previous       the latest flight of the itinerary so far (null if there is none).
+   * @return the flights that can be the next flight of the itinerary.
+   */
+  ArrayList<Flight> nextFlights(FlightDatabase flightDatabase, Flight previous) {
+    ArrayList<Flight> next = new ArrayList<Flight>();
+    if (previous == null) {
+      // only the departures on the date of this query are looked at
+      ArrayList<Flight> departures =
+              flightDatabase.getFlightsOfOrigin(this.origin, this.date, this.date).get(this.date);
+      if (departures != null) {
+        for (Flight flight : departures) {
+          if (this.canTake(flight)) {
+            next.add(flight);
+          }
+        }
+      }
+    } else {
+      for (Flight flight : flightDatabase.getConnections(previous)) {
+        if (this.canTake(flight) && this.withinLayoverLimit(previous, flight)) {
+          next.add(flight);
+        }
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Returns a key that is the same for any two queries that find the same itineraries.
+   *
+   * @return the key of this query.
+   */
+  String getKey() {
+    return this.date + "\n" + this.origin + "\n" + this.destination + "\n" + this.maxLegs + "\n"
+            + this.maxDurationMinutes + "\n" + this.maxLayoverMinutes + "\n" + this.maxCost + "\n"
+            + this.allowedAirlines + "\n" + this.excludedAirlines;
+  }
+
+  /**
+   * Returns the string representation of this query.
+   *
+   * @return the string representation of this query.
+   */
+  @Override
+  public String toString() {
+    return String.format("%s,%s,%s", this.date, this.origin, this.destination);
+  }
+}
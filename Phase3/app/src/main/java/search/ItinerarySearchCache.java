@@ -0,0 +1,204 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+import databases.FlightDatabaseListener;
+
+/**
+ * A bounded cache of the itineraries found for recent queries. When the cache is full, the
+ * query that was used least recently is dropped, and a query is also dropped once it is older
+ * than the time to live.
+ * <p/>
+ * Every entry remembers the locations whose departures were looked at while searching for it.
+ * A change to a flight can only change the itineraries of a query if the flight departs from
+ * one of those locations, so only those entries are dropped when a flight is added, removed,
+ * edited or has its seats booked or cancelled.
+ */
+public class ItinerarySearchCache implements FlightDatabaseListener {
+
+  private final int capacity;
+  private final long timeToLive;
+  // the cached entries keyed by query, in order of least to most recently used
+  private final LinkedHashMap<String, CachedSearch> entries;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  private long invalidations = 0;
+
+  /**
+   * The itineraries of a query, the locations searched to find them and when they were found.
+   */
+  private static class CachedSearch {
+
+    private final ArrayList<Itinerary> itineraries;
+    private final BitSet searchedLocations;
+    private final long createdAt;
+
+    /**
+     * Creates a new entry.
+     *
+     * @param itineraries       the itineraries found.
+     * @param searchedLocations the ids of the locations whose departures were searched.
+     * @param createdAt         the time the entry was created in milliseconds.
+     */
+    private CachedSearch(ArrayList<Itinerary> itineraries, BitSet searchedLocations,
+                  long createdAt) {
+      this.itineraries = itineraries;
+      this.searchedLocations = searchedLocations;
+      this.createdAt = createdAt;
+    }
+  }
+
+  /**
+   * Creates a new empty cache.
+   *
+   * @param capacity   the largest number of queries to keep.
+   * @param timeToLive how long a query is kept in milliseconds.
+   */
+  public ItinerarySearchCache(int capacity, long timeToLive) {
+    this.capacity = capacity;
+    this.timeToLive = timeToLive;
+    this.entries = new LinkedHashMap<String, CachedSearch>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedSearch> eldest) {
+        // drop the least recently used query when there are too many
+        if (size() > ItinerarySearchCache.this.capacity) {
+          ItinerarySearchCache.this.evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns a copy of the itineraries cached for the given query, or null if the query isn't
+   * cached or has expired.
+   *
+   * @param query the query to look up.
+   * @return the cached itineraries, or null if there are none.
+   */
+  synchronized ArrayList<Itinerary> get(ItineraryQuery query) {
+    CachedSearch entry = this.entries.get(query.getKey());
+    if (entry != null && System.currentTimeMillis() - entry.createdAt > this.timeToLive) {
+      // the entry is too old to be used
+      this.entries.remove(query.getKey());
+      this.evictions++;
+      entry = null;
+    }
+    if (entry == null) {
+      this.misses++;
+      return null;
+    } else {
+      this.hits++;
+      return new ArrayList<Itinerary>(entry.itineraries);
+    }
+  }
+
+  /**
+   * Caches the itineraries found for the given query.
+   *
+   * @param query             the query that was searched.
+   * @param itineraries       the itineraries found.
+   * @param searchedLocations the ids of the locations whose departures were searched.
+   */
+  synchronized void put(ItineraryQuery query, ArrayList<Itinerary> itineraries,
+                        BitSet searchedLocations) {
+    this.entries.put(query.getKey(), new CachedSearch(new ArrayList<Itinerary>(itineraries),
+            searchedLocations, System.currentTimeMillis()));
+  }
+
+  /**
+   * Drops the queries whose itineraries could change because of the change to the flight.
+   *
+   * @param oldFlight the flight before the change (null if none).
+   * @param newFlight the flight after the change (null if none).
+   */
+  @Override
+  public synchronized void flightChanged(Flight oldFlight, Flight newFlight) {
+    // the flight may have come from outside the database, so look its origins up by name
+    int oldOrigin = oldFlight != null ? FlightDatabase.findAirportId(oldFlight.getOrigin()) : -1;
+    int newOrigin = newFlight != null ? FlightDatabase.findAirportId(newFlight.getOrigin()) : -1;
+    Iterator<CachedSearch> iterator = this.entries.values().iterator();
+    while (iterator.hasNext()) {
+      CachedSearch entry = iterator.next();
+      // the flight only matters to searches that looked at the departures of its origin
+      if ((oldOrigin >= 0 && entry.searchedLocations.get(oldOrigin))
+              || (newOrigin >= 0 && entry.searchedLocations.get(newOrigin))) {
+        iterator.remove();
+        this.invalidations++;
+      }
+    }
+  }
+
+  /**
+   * Drops every cached query.
+   */
+  public synchronized void clear() {
+    this.entries.clear();
+  }
+
+  /**
+   * Returns the number of queries that are cached.
+   *
+   * @return the number of queries that are cached.
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Returns the number of lookups that found a cached query.
+   *
+   * @return the number of lookups that found a cached query.
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Returns the number of lookups that didn't find a cached query.
+   *
+   * @return the number of lookups that didn't find a cached query.
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Returns the number of queries dropped for being least recently used or too old.
+   *
+   * @return the number of queries dropped for being least recently used or too old.
+   */
+  public synchronized long getEvictions() {
+    return this.evictions;
+  }
+
+  /**
+   * Returns the number of queries dropped because a flight they depend on changed.
+   *
+   * @return the number of queries dropped because a flight they depend on changed.
+   */
+  public synchronized long getInvalidations() {
+    return this.invalidations;
+  }
+
+  /**
+   * Returns the string representation of the statistics of this cache.
+   *
+   * @return the string representation of the statistics of this cache.
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format("size %d/%d, hits %d, misses %d, evictions %d, invalidations %d",
+            this.entries.size(), this.capacity, this.hits, this.misses, this.evictions,
+            this.invalidations);
+  }
+}
@@ -0,0 +1,103 @@
+package search;
+
+import java.util.ArrayList;
+
+import backend.Itinerary;
+
+/**
+ * The itineraries found for an itinerary query. A result belongs to the caller that ran the
+ * search, so sorting it doesn't affect any other search.
+ */
+public class ItinerarySearchResult {
+
+  private ItineraryQuery query;
+  private ArrayList<Itinerary> itineraries;
+
+  /**
+   * Creates a new result for the given query.
+   *
+   * @param query       the query that was searched.
+   * @param itineraries the itineraries that were found.
+   */
+  public ItinerarySearchResult(ItineraryQuery query, ArrayList<Itinerary> itineraries) {
+    this.query = query;
+    this.itineraries = itineraries;
+  }
+
+  /**
+   * Returns the query that was searched.
+   *
+   * @return the query that was searched.
+   */
+  public ItineraryQuery getQuery() {
+    return query;
+  }
+
+  /**
+   * Returns the itineraries that were found.
+   *
+   * @return the itineraries that were found.
+   */
+  public ArrayList<Itinerary> getItineraries() {
+    return itineraries;
+  }
+
+  /**
+   * Returns true if no itineraries were found.
+   *
+   * @return true if no itineraries were found.
+   */
+  public boolean isEmpty() {
+    return itineraries.isEmpty();
+  }
+
+  /**
+   * Returns the number of itineraries that were found.
+   *
+   * @return the number of itineraries that were found.
+   */
+  public int size() {
+    return itineraries.size();
+  }
+
+  /**
+   * Sorts the itineraries in non-decreasing order based on the given keys. Itineraries are
+   * compared by the first key, then by the next key on a tie, and so on.
+   *
+   * @param keys the keys to sort by, in order of importance.
+   */
+  public void sortBy(ItinerarySorter.SortKey... keys) {
+    this.itineraries = ItinerarySorter.sort(this.itineraries, keys);
+  }
+
+  /**
+   * Sorts the itineraries in non-decreasing order based on total cost.
+   */
+  public void sortByTotalCost() {
+    this.itineraries = ItinerarySorter.sortByTotalCost(this.itineraries);
+  }
+
+  /**
+   * Sorts the itineraries in non-decreasing order based on travel time.
+   */
+  public void sortByTravelTime() {
+    this.itineraries = ItinerarySorter.sortByTravelTime(this.itineraries);
+  }
+
+  /**
+   * Returns the string representation of the itineraries, separated by new lines.
+   *
+   * @return the string representation of the itineraries.
+   */
+  @Override
+  public String toString() {
+    String message = "";
+    for (int i = 0; i < itineraries.size(); i++) {
+      message += itineraries.get(i).toString();
+      if (i != itineraries.size() - 1) {
+        message += "\n";
+      }
+    }
+    return message;
+  }
+}
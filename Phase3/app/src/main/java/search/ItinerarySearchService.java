@@ -0,0 +1,408 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.TreeMap;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+/**
+ * Searches the flights of a flight database for itineraries. Every search takes a query and
+ * returns a new result, and searches can run at the same time, as long as the flight database
+ * isn't changed while they run.
+ * <p/>
+ * A service keeps a reachability index, so queries whose destination can't be reached from
+ * their origin at all are answered without searching. It can be given a cache, in which case
+ * searches for all the itineraries of a query are answered from it when possible. A search for
+ * all the itineraries of a query only works out the ways on from an airport at a given time
+ * once, and a service can be told to keep these between queries. Each thread then keeps its
+ * own memo of them, so searches on different threads never wait for each other.
+ */
+public class ItinerarySearchService {
+
+  // the number of minutes in a day
+  private static final long MINUTES_PER_DAY = 24 * 60;
+
+  private final FlightDatabase flightDatabase;
+  private final ItinerarySearchCache cache;
+  private final ReachabilityIndex reachability;
+  // the sub-searches kept between queries by each thread (null to start over for every query)
+  private volatile ThreadLocal<MemoizedItinerarySearch.Memo> memos = null;
+
+  /**
+   * Creates a new search service for the flights of the given database.
+   *
+   * @param flightDatabase the database of the flights to search.
+   */
+  public ItinerarySearchService(FlightDatabase flightDatabase) {
+    this(flightDatabase, null);
+  }
+
+  /**
+   * Creates a new search service for the flights of the given database that caches its results
+   * in the given cache. The cache must be registered as a listener of the flight databases so
+   * it hears about changes to flights.
+   *
+   * @param flightDatabase the database of the flights to search.
+   * @param cache          the cache of search results (null for no cache).
+   */
+  public ItinerarySearchService(FlightDatabase flightDatabase, ItinerarySearchCache cache) {
+    this.flightDatabase = flightDatabase;
+    this.cache = cache;
+    this.reachability = new ReachabilityIndex(flightDatabase);
+  }
+
+  /**
+   * Sets whether the sub-searches of a search for all the itineraries of a query are kept for
+   * the next queries on the same thread. They are dropped whenever a flight is added or
+   * removed. Otherwise they are kept for as long as the thread lives, so only turn this on for
+   * a service whose threads run many queries in a row.
+   *
+   * @param memoize true to keep the sub-searches between queries.
+   */
+  public void setMemoizeAcrossQueries(boolean memoize) {
+    if (!memoize) {
+      this.memos = null;
+    } else {
+      this.memos = new ThreadLocal<MemoizedItinerarySearch.Memo>() {
+        @Override
+        protected MemoizedItinerarySearch.Memo initialValue() {
+          return new MemoizedItinerarySearch.Memo();
+        }
+      };
+    }
+  }
+
+  /**
+   * Returns the flight database this service searches.
+   *
+   * @return the flight database this service searches.
+   */
+  FlightDatabase getFlightDatabase() {
+    return flightDatabase;
+  }
+
+  /**
+   * Returns all the valid itineraries for the given query. An itinerary is valid if its first
+   * flight departs on the date of the query, consecutive flights have valid wait times, every
+   * flight has room and it is within the limits of the query.
+   *
+   * @param query the query to search for.
+   * @return the valid itineraries for the query.
+   */
+  public ItinerarySearchResult search(ItineraryQuery query) {
+    if (!this.mayHaveItineraries(query)) {
+      return noItineraries(query);
+    }
+    if (this.cache != null) {
+      return this.searchCached(query);
+    }
+    return new ItinerarySearchResult(query, this.searchAll(query, new BitSet()));
+  }
+
+  /**
+   * Returns false if the given query certainly has no itineraries: its origin or destination
+   * has never been used by a flight, or the reachability index says the destination can't be
+   * reached from the origin on the date of the query.
+   *
+   * @param query the query to check.
+   * @return false if the query certainly has no itineraries.
+   */
+  private boolean mayHaveItineraries(ItineraryQuery query) {
+    return query.hasKnownAirports() && this.reachability.mayReach(query);
+  }
+
+  /**
+   * Returns a result with no itineraries for the given query.
+   *
+   * @param query the query that was searched.
+   * @return a result with no itineraries.
+   */
+  private static ItinerarySearchResult noItineraries(ItineraryQuery query) {
+    return new ItinerarySearchResult(query, new ArrayList<Itinerary>());
+  }
+
+  /**
+   * Returns all the valid itineraries for the given query. Queries with limits are searched with
+   * an {@link ItineraryIterator}, which stops expanding a partial itinerary as soon as it reaches
+   * a limit, and the others are searched with the sub-searches worked out once per airport and
+   * arrival time.
+   *
+   * @param query    the query to search for.
+   * @param searched the set to add the ids of the locations whose departures were searched to.
+   * @return the valid itineraries for the query.
+   */
+  private ArrayList<Itinerary> searchAll(ItineraryQuery query, BitSet searched) {
+    if (query.hasLimits()) {
+      ItineraryIterator iterator = this.iterator(query);
+      ArrayList<Itinerary> itineraries = iterator.next(Integer.MAX_VALUE);
+      searched.or(iterator.getSearchedLocations());
+      return itineraries;
+    }
+    return this.searchMemoized(query, searched);
+  }
+
+  /**
+   * Returns all the valid itineraries for the given query, working out the ways on from every
+   * airport and arrival time only once.
+   *
+   * @param query    the query to search for.
+   * @param searched the set to add the ids of the locations whose departures were searched to.
+   * @return the valid itineraries for the query.
+   */
+  private ArrayList<Itinerary> searchMemoized(ItineraryQuery query, BitSet searched) {
+    return new MemoizedItinerarySearch(this.flightDatabase, query, this.getMemo())
+            .search(searched);
+  }
+
+  /**
+   * Returns the memo of sub-searches this thread keeps between queries, or a new one if they
+   * aren't kept. A memo is only ever used by one thread.
+   *
+   * @return the memo to search with.
+   */
+  private MemoizedItinerarySearch.Memo getMemo() {
+    ThreadLocal<MemoizedItinerarySearch.Memo> memos = this.memos;
+    return memos != null ? memos.get() : new MemoizedItinerarySearch.Memo();
+  }
+
+  /**
+   * Returns the itineraries for the given query from the cache, or searches for them and caches
+   * them along with the locations that were searched.
+   *
+   * @param query the query to search for.
+   * @return the valid itineraries for the query.
+   */
+  private ItinerarySearchResult searchCached(ItineraryQuery query) {
+    ArrayList<Itinerary> itineraries = this.cache.get(query);
+    if (itineraries == null) {
+      BitSet searched = new BitSet();
+      itineraries = this.searchAll(query, searched);
+      this.cache.put(query, itineraries, searched);
+    }
+    return new ItinerarySearchResult(query, itineraries);
+  }
+
+  /**
+   * Returns an iterator over the same itineraries as {@link #search(ItineraryQuery)}, in the
+   * same order. Each itinerary is only searched for when it is asked for.
+   *
+   * @param query the query to search for.
+   * @return an iterator over the valid itineraries for the query.
+   */
+  public ItineraryIterator iterator(ItineraryQuery query) {
+    return new ItineraryIterator(this.flightDatabase, query);
+  }
+
+  /**
+   * Returns one page of the itineraries returned by {@link #search(ItineraryQuery)}: at most
+   * limit itineraries, starting with the one at the given offset. The search stops as soon as
+   * the page is full.
+   *
+   * @param query  the query to search for.
+   * @param offset the number of itineraries to skip.
+   * @param limit  the largest number of itineraries to return.
+   * @return the page of valid itineraries for the query.
+   */
+  public ItinerarySearchResult searchPage(ItineraryQuery query, int offset, int limit) {
+    if (!this.mayHaveItineraries(query)) {
+      return noItineraries(query);
+    }
+    ItineraryIterator iterator = this.iterator(query);
+    iterator.skip(offset);
+    return new ItinerarySearchResult(query, iterator.next(limit));
+  }
+
+  /**
+   * Returns the same itineraries as {@link #search(ItineraryQuery)}, in the same order, but
+   * searches the flights after each first flight (or pair of flights when there are few first
+   * flights) in parallel.
+   *
+   * @param query the query to search for.
+   * @return the valid itineraries for the query.
+   */
+  public ItinerarySearchResult searchParallel(ItineraryQuery query) {
+    if (!this.mayHaveItineraries(query)) {
+      return noItineraries(query);
+    }
+    return new ItinerarySearchResult(query, new ParallelItinerarySearch(this, query).search());
+  }
+
+  /**
+   * Returns the valid itineraries for the given query and for the same query on each of the
+   * given number of days before and after its date, grouped by departure date. Each date has
+   * the same itineraries, in the same order, as {@link #search(ItineraryQuery)} returns for it.
+   * <p/>
+   * The first flights of the whole window come from the origin and departure date index of the
+   * flight database, and the dates share one memo of sub-searches, so the ways on from an
+   * airport at a given time are only worked out once for the whole window. Queries with limits
+   * are searched date by date with an {@link ItineraryIterator} instead.
+   *
+   * @param query the query to search for.
+   * @param days  the number of days before and after the date of the query to search (not
+   *              negative).
+   * @return the result for every date in the window, keyed by date.
+   */
+  public TreeMap<String, ItinerarySearchResult> searchFlexible(ItineraryQuery query, int days) {
+    if (days < 0) {
+      throw new IllegalArgumentException("The number of days can't be negative: " + days);
+    }
+    long start = Flight.minutesOf(query.getDate() + " 00:00");
+    String firstDate = Flight.dateOf(start - days * MINUTES_PER_DAY);
+    String lastDate = Flight.dateOf(start + days * MINUTES_PER_DAY);
+    TreeMap<String, ArrayList<Flight>> departures =
+            this.flightDatabase.getFlightsOfOrigin(query.getOrigin(), firstDate, lastDate);
+
+    TreeMap<String, ItinerarySearchResult> results = new TreeMap<String, ItinerarySearchResult>();
+    MemoizedItinerarySearch.Memo memo = query.hasLimits() ? null : this.getMemo();
+    for (int day = -days; day <= days; day++) {
+      ItineraryQuery dateQuery = query.onDate(Flight.dateOf(start + day * MINUTES_PER_DAY));
+      ArrayList<Flight> dateDepartures = departures.get(dateQuery.getDate());
+      ArrayList<Itinerary> itineraries;
+      if (dateDepartures == null || !this.mayHaveItineraries(dateQuery)) {
+        itineraries = new ArrayList<Itinerary>();
+      } else if (memo == null) {
+        itineraries = this.searchAll(dateQuery, new BitSet());
+      } else {
+        ArrayList<Flight> firstFlights = new ArrayList<Flight>();
+        for (Flight flight : dateDepartures) {
+          // the departures are already on the date, so only the flight itself is checked
+          if (dateQuery.canTake(flight)) {
+            firstFlights.add(flight);
+          }
+        }
+        itineraries = new MemoizedItinerarySearch(this.flightDatabase, dateQuery, memo)
+                .search(firstFlights, new BitSet());
+      }
+      results.put(dateQuery.getDate(), new ItinerarySearchResult(dateQuery, itineraries));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the same itineraries as {@link #search(ItineraryQuery)}, in the same order, but
+   * first expands forward from the origin and backward from the destination to find the flights
+   * that can be part of an itinerary, so airports that never lead to the destination aren't
+   * searched past.
+   *
+   * @param query the query to search for.
+   * @return the valid itineraries for the query.
+   */
+  public ItinerarySearchResult searchBidirectional(ItineraryQuery query) {
+    if (!this.mayHaveItineraries(query)) {
+      return noItineraries(query);
+    }
+    return new ItinerarySearchResult(query,
+            new BidirectionalItinerarySearch(this.flightDatabase, query).search());
+  }
+
+  /**
+   * Returns the k cheapest valid itineraries for the given query, sorted in non-decreasing order
+   * based on total cost. Only as much of the flights as needed to find them is searched.
+   *
+   * @param query the query to search for.
+   * @param k     the number of itineraries to return.
+   * @return the k cheapest valid itineraries for the query (fewer if there aren't k).
+   */
+  public ItinerarySearchResult searchCheapest(ItineraryQuery query, int k) {
+    if (!this.mayHaveItineraries(query)) {
+      return noItineraries(query);
+    }
+    return new ItinerarySearchResult(query,
+            new CheapestFirstSearch(this.flightDatabase, query).search(k));
+  }
+
+  /**
+   * Returns the valid itinerary for the given query that arrives at the destination the
+   * earliest. The flights are scanned once in order of departure.
+   *
+   * @param query the query to search for.
+   * @return the itinerary that arrives the earliest (no itineraries if there is none).
+   */
+  public ItinerarySearchResult searchEarliestArrival(ItineraryQuery query) {
+    if (!this.mayHaveItineraries(query)) {
+      return noItineraries(query);
+    }
+    return new ItinerarySearchResult(query,
+            new ConnectionScanSearch(this.flightDatabase, query).searchEarliestArrival());
+  }
+
+  /**
+   * Returns the k valid itineraries for the given query with the shortest travel time, sorted in
+   * non-decreasing order based on travel time. The flights are scanned once in order of
+   * departure.
+   *
+   * @param query the query to search for.
+   * @param k     the number of itineraries to return.
+   * @return the k fastest valid itineraries for the query (fewer if there aren't k).
+   */
+  public ItinerarySearchResult searchFastest(ItineraryQuery query, int k) {
+    if (!this.mayHaveItineraries(query)) {
+      return noItineraries(query);
+    }
+    return new ItinerarySearchResult(query,
+            new ConnectionScanSearch(this.flightDatabase, query).searchFastest(k));
+  }
+
+  /**
+   * Returns the valid itineraries for the given query that are Pareto optimal in total cost,
+   * travel time and number of flights, sorted by total cost, then travel time, then number of
+   * flights. Partial itineraries that can't lead to such an itinerary are dropped as soon as
+   * they are found.
+   *
+   * @param query the query to search for.
+   * @return the Pareto optimal itineraries for the query.
+   */
+  public ItinerarySearchResult searchParetoOptimal(ItineraryQuery query) {
+    if (!this.mayHaveItineraries(query)) {
+      return noItineraries(query);
+    }
+    return new ItinerarySearchResult(query,
+            new ParetoSearch(this.flightDatabase, query).search());
+  }
+
+  /**
+   * Adds the itineraries of all the possible sequences of flights from the origin to the
+   * destination of the query that make valid itineraries, continuing the given partial
+   * itinerary. Only the flights that can follow the previous flight (or depart on the date of
+   * the query, for the first flight) and have room are looked at, and partial itineraries that
+   * go past the limits of the query are dropped. Partial itineraries share
+   * their flights through path nodes, so an itinerary is only built once it reaches the
+   * destination.
+   *
+   * @param origin      the id of the location to search from.
+   * @param query       the query being searched.
+   * @param path        the partial itinerary that arrived at the origin (null for the first
+   *                    flight).
+   * @param visited     the ids of the locations that have already been visited.
+   * @param itineraries the list to add the itineraries to.
+   */
+  void search(int origin, ItineraryQuery query, PathNode path, BitSet visited,
+              ArrayList<Itinerary> itineraries) {
+    Flight previous = path == null ? null : path.getFlight();
+    // keep track of the locations where we have been
+    visited.set(origin);
+    // loop through the flights that can be taken from the given origin: its departures on the
+    // date of the query for the first flight, or the connections of the previous flight
+    for (Flight flight : query.nextFlights(this.flightDatabase, previous)) {
+      PathNode next = new PathNode(flight, path);
+      // skip the flight if it takes the itinerary past the limits of the query
+      if (!next.isWithinLimits(query)) {
+        continue;
+      }
+      // if the flight goes directly to the destination then add its itinerary
+      if (query.endsWith(flight)) {
+        itineraries.add(next.toItinerary());
+        // otherwise check if we have already visited the destination
+      } else if (!visited.get(flight.getDestinationId())) {
+        // add all the itineraries from the current flight's destination to the actual
+        // destination
+        search(flight.getDestinationId(), query, next, visited, itineraries);
+      }
+    }
+    // remove the location that was traversed through
+    visited.clear(origin);
+  }
+}
@@ -0,0 +1,129 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import backend.Itinerary;
+
+/**
+ * Sorts lists of itineraries by one or more keys. The keys of every itinerary are computed once
+ * before sorting, and the sort is a stable O(n log n) merge sort, so itineraries with equal keys
+ * keep their original order.
+ */
+public class ItinerarySorter {
+
+  /**
+   * The keys that itineraries can be sorted by.
+   */
+  public enum SortKey {
+    // the total cost of the itinerary
+    COST,
+    // the total travel time of the itinerary
+    TRAVEL_TIME,
+    // the number of flights in the itinerary
+    LEGS
+  }
+
+  /**
+   * An itinerary together with its precomputed sort keys.
+   */
+  private static class SortEntry {
+
+    private final Itinerary itinerary;
+    private final double[] keys;
+
+    /**
+     * Creates a new sort entry and computes the given keys of the itinerary.
+     *
+     * @param itinerary the itinerary to sort.
+     * @param sortKeys  the keys to compute, in order of importance.
+     */
+    private SortEntry(Itinerary itinerary, SortKey[] sortKeys) {
+      this.itinerary = itinerary;
+      this.keys = new double[sortKeys.length];
+      for (int i = 0; i < sortKeys.length; i++) {
+        this.keys[i] = keyOf(itinerary, sortKeys[i]);
+      }
+    }
+  }
+
+  // compares sort entries key by key, moving to the next key only on a tie
+  private static final Comparator<SortEntry> ENTRY_ORDER = new Comparator<SortEntry>() {
+    @Override
+    public int compare(SortEntry entry1, SortEntry entry2) {
+      for (int i = 0; i < entry1.keys.length; i++) {
+        int result = Double.compare(entry1.keys[i], entry2.keys[i]);
+        if (result != 0) {
+          return result;
+        }
+      }
+      return 0;
+    }
+  };
+
+  /**
+   * Returns the value of the given key for the itinerary.
+   *
+   * @param itinerary the itinerary.
+   * @param key       the key to compute.
+   * @return the value of the key for the itinerary.
+   */
+  private static double keyOf(Itinerary itinerary, SortKey key) {
+    switch (key) {
+      case COST:
+        return itinerary.getTotalCost();
+      case TRAVEL_TIME:
+        return itinerary.totalTravelTime();
+      default:
+        return itinerary.numFlights();
+    }
+  }
+
+  /**
+   * Given a list of itineraries create a new list of itineraries that is sorted in non-decreasing
+   * order based on the given keys and return it. Itineraries are compared by the first key, then
+   * by the second key if the first ones are equal, and so on.
+   *
+   * @param itineraryList the list of itineraries that needs to be sorted.
+   * @param keys          the keys to sort by, in order of importance.
+   * @return a new sorted list of itineraries.
+   */
+  public static ArrayList<Itinerary> sort(ArrayList<Itinerary> itineraryList, SortKey... keys) {
+    // compute the keys of every itinerary once
+    SortEntry[] entries = new SortEntry[itineraryList.size()];
+    for (int i = 0; i < entries.length; i++) {
+      entries[i] = new SortEntry(itineraryList.get(i), keys);
+    }
+    // sort the entries (the sort is stable, so ties keep their order)
+    Arrays.sort(entries, ENTRY_ORDER);
+    // make a new itinerary list in the sorted order
+    ArrayList<Itinerary> newItin = new ArrayList<Itinerary>(entries.length);
+    for (SortEntry entry : entries) {
+      newItin.add(entry.itinerary);
+    }
+    return newItin;
+  }
+
+  /**
+   * Given a list of itineraries create a new list of itineraries that is sorted in non-decreasing
+   * order based on travel time and return it.
+   *
+   * @param itineraryList the list of itineraries that needs to be sorted.
+   * @return a new sorted list of itineraries.
+   */
+  public static ArrayList<Itinerary> sortByTravelTime(ArrayList<Itinerary> itineraryList) {
+    return sort(itineraryList, SortKey.TRAVEL_TIME);
+  }
+
+  /**
+   * Given a list of itineraries create a new list of itineraries that is sorted in non-decreasing
+   * order based on total cost and return it.
+   *
+   * @param itineraryList the list of itineraries that needs to be sorted.
+   * @return a new sorted list of itineraries.
+   */
+  public static ArrayList<Itinerary> sortByTotalCost(ArrayList<Itinerary> itineraryList) {
+    return sort(itineraryList, SortKey.COST);
+  }
+}
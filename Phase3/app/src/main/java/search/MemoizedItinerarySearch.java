@@ -0,0 +1,282 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+/**
+ * Searches for the same itineraries as the recursive search of {@link ItinerarySearchService},
+ * in the same order, but works out the ways to get from a flight to the destination only once
+ * for every airport and arrival time. Flights that land at the same airport at the same time
+ * have the same connections, so the ways on from there (the sub-search) are the same for all of
+ * them, and are kept in a memo.
+ * <p/>
+ * A sub-search doesn't depend on the rest of the itinerary: it keeps every way on to the
+ * destination that doesn't go back to its own airport, whether or not the flights have room.
+ * The locations visited earlier and the seats are checked when the itineraries are put
+ * together, which keeps the sub-searches valid for any query to the same destination. A memo
+ * can therefore be shared by many queries, as long as the flights don't change.
+ */
+class MemoizedItinerarySearch {
+
+  /**
+   * A way on from an airport to the destination: its first flight and the way on after it.
+   * Suffixes never change, so ways that end the same way share their last flights.
+   */
+  private static final class Suffix {
+
+    private final Flight flight;
+    private final Suffix next;
+
+    /**
+     * Creates a new suffix.
+     *
+     * @param flight the first flight of the suffix.
+     * @param next   the rest of the suffix (null if the flight arrives at the destination).
+     */
+    private Suffix(Flight flight, Suffix next) {
+      this.flight = flight;
+      this.next = next;
+    }
+
+    /**
+     * Returns true if the suffix stops at the given location before the destination.
+     *
+     * @param location the id of the location.
+     * @return true if the suffix stops at the location.
+     */
+    private boolean passesThrough(int location) {
+      for (Suffix suffix = this; suffix.next != null; suffix = suffix.next) {
+        if (suffix.flight.getDestinationId() == location) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Returns true if every flight of the suffix stops at none of the visited locations before
+     * the destination.
+     *
+     * @param visited the ids of the visited locations.
+     * @return true if the suffix stops at none of the visited locations.
+     */
+    private boolean avoids(BitSet visited) {
+      for (Suffix suffix = this; suffix.next != null; suffix = suffix.next) {
+        if (visited.get(suffix.flight.getDestinationId())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The ways on to the destination after a flight, in the order the recursive search finds
+   * them, and the locations whose departures they depend on.
+   */
+  private static final class SubSearch {
+
+    private final ArrayList<Suffix> suffixes;
+    private final BitSet locations;
+
+    /**
+     * Creates a new sub-search result.
+     *
+     * @param suffixes  the ways on to the destination.
+     * @param locations the ids of the locations whose departures were searched.
+     */
+    private SubSearch(ArrayList<Suffix> suffixes, BitSet locations) {
+      this.suffixes = suffixes;
+      this.locations = locations;
+    }
+  }
+
+  /**
+   * The sub-searches done so far, for every destination. A memo belongs to one flight database
+   * and starts over whenever a flight is added to it or removed from it. Once it holds too many
+   * suffixes, new sub-searches aren't kept, and it starts over at the next search. A memo must
+   * only be used by one search at a time.
+   */
+  static class Memo {
+
+    // the largest number of suffixes the memo keeps. Suffixes are shared, so this counts every
+    // suffix once, however many ways on it is part of
+    private static final int MAX_SIZE = 200000;
+
+    // the sub-searches keyed by the id of the destination, then by the id of the airport and
+    // the arrival time (the airport in the upper 32 bits, the arrival in minutes below)
+    private final HashMap<Integer, HashMap<Long, SubSearch>> subSearches =
+            new HashMap<Integer, HashMap<Long, SubSearch>>();
+    // the number of suffixes made by the sub-searches kept
+    private int size = 0;
+    // the modification count of the flight database the sub-searches were done on
+    private long version = -1;
+
+    /**
+     * Returns the sub-searches to the given destination, after dropping every sub-search if the
+     * flights have changed since they were done or the memo is full.
+     *
+     * @param flightDatabase the database of the flights being searched.
+     * @param destination    the id of the destination.
+     * @return the sub-searches to the destination.
+     */
+    private HashMap<Long, SubSearch> prepare(FlightDatabase flightDatabase, int destination) {
+      if (this.version != flightDatabase.getModificationCount() || this.size >= MAX_SIZE) {
+        this.subSearches.clear();
+        this.size = 0;
+        this.version = flightDatabase.getModificationCount();
+      }
+      HashMap<Long, SubSearch> toDestination = this.subSearches.get(destination);
+      if (toDestination == null) {
+        toDestination = new HashMap<Long, SubSearch>();
+        this.subSearches.put(destination, toDestination);
+      }
+      return toDestination;
+    }
+  }
+
+  private final FlightDatabase flightDatabase;
+  private final ItineraryQuery query;
+  private final Memo memo;
+  private final HashMap<Long, SubSearch> subSearches;
+  private final int destination;
+
+  /**
+   * Creates a new memoized search for the given query. The memo must not be used by another
+   * search at the same time.
+   *
+   * @param flightDatabase the database of the flights to search.
+   * @param query          the query to search for.
+   * @param memo           the sub-searches done so far.
+   */
+  MemoizedItinerarySearch(FlightDatabase flightDatabase, ItineraryQuery query, Memo memo) {
+    this.flightDatabase = flightDatabase;
+    this.query = query;
+    this.memo = memo;
+    this.destination = query.getDestinationId();
+    this.subSearches = memo.prepare(flightDatabase, this.destination);
+  }
+
+  /**
+   * Returns all the valid itineraries for the query, in the same order as the recursive search.
+   *
+   * @param searched the set to add the ids of the locations whose departures were searched to.
+   * @return the valid itineraries for the query.
+   */
+  ArrayList<Itinerary> search(BitSet searched) {
+    return this.search(this.query.nextFlights(this.flightDatabase, null), searched);
+  }
+
+  /**
+   * Returns the valid itineraries for the query that start with the given first flights, in
+   * the order of the first flights.
+   *
+   * @param firstFlights the flights that can be the first flight of an itinerary for the query.
+   * @param searched     the set to add the ids of the locations whose departures were searched
+   *                     to.
+   * @return the valid itineraries for the query that start with the flights.
+   */
+  ArrayList<Itinerary> search(ArrayList<Flight> firstFlights, BitSet searched) {
+    ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+    int origin = this.query.getOriginId();
+    searched.set(origin);
+    BitSet visited = new BitSet();
+    visited.set(origin);
+    for (Flight flight : firstFlights) {
+      if (this.query.endsWith(flight)) {
+        Itinerary itinerary = new Itinerary();
+        itinerary.addFlight(flight);
+        itineraries.add(itinerary);
+      } else if (!visited.get(flight.getDestinationId())) {
+        SubSearch subSearch = this.subSearch(flight);
+        searched.or(subSearch.locations);
+        for (Suffix suffix : subSearch.suffixes) {
+          // the sub-search only avoids its own airport, so drop the ways on that go back to an
+          // earlier location or take a flight without room
+          if (suffix.avoids(visited) && this.canTakeAll(suffix)) {
+            itineraries.add(this.toItinerary(flight, suffix));
+          }
+        }
+      }
+    }
+    return itineraries;
+  }
+
+  /**
+   * Returns the ways on to the destination after the given flight, from the memo if a flight
+   * that lands at the same airport at the same time has been searched before.
+   *
+   * @param previous the flight to continue from.
+   * @return the ways on to the destination after the flight.
+   */
+  private SubSearch subSearch(Flight previous) {
+    int hub = previous.getDestinationId();
+    long key = ((long) hub << 32) | previous.getArrivalMinutes();
+    SubSearch subSearch = this.subSearches.get(key);
+    if (subSearch != null) {
+      return subSearch;
+    }
+
+    ArrayList<Suffix> suffixes = new ArrayList<Suffix>();
+    BitSet locations = new BitSet();
+    locations.set(hub);
+    for (Flight flight : this.flightDatabase.getConnections(previous)) {
+      if (flight.getDestinationId() == this.destination) {
+        suffixes.add(new Suffix(flight, null));
+      } else if (flight.getDestinationId() != hub) {
+        SubSearch next = this.subSearch(flight);
+        locations.or(next.locations);
+        // don't come back to the airport of this sub-search
+        for (Suffix suffix : next.suffixes) {
+          if (!suffix.passesThrough(hub)) {
+            suffixes.add(new Suffix(flight, suffix));
+          }
+        }
+      }
+    }
+    subSearch = new SubSearch(suffixes, locations);
+    // only keep the sub-search if the memo has room for it. Every suffix of the sub-search was
+    // made by it
+    if (this.memo.size + suffixes.size() <= Memo.MAX_SIZE) {
+      this.subSearches.put(key, subSearch);
+      this.memo.size += suffixes.size();
+    }
+    return subSearch;
+  }
+
+  /**
+   * Returns true if every flight of the suffix can be part of an itinerary for the query.
+   *
+   * @param suffix the suffix to check.
+   * @return true if every flight of the suffix can be taken.
+   */
+  private boolean canTakeAll(Suffix suffix) {
+    for (; suffix != null; suffix = suffix.next) {
+      if (!this.query.canTake(suffix.flight)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the itinerary of the first flight followed by the flights of the suffix.
+   *
+   * @param first  the first flight.
+   * @param suffix the flights after the first flight.
+   * @return the itinerary of the flights.
+   */
+  private Itinerary toItinerary(Flight first, Suffix suffix) {
+    Itinerary itinerary = new Itinerary();
+    itinerary.addFlight(first);
+    for (; suffix != null; suffix = suffix.next) {
+      itinerary.addFlight(suffix.flight);
+    }
+    return itinerary;
+  }
+}
@@ -0,0 +1,174 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import backend.Flight;
+import backend.Itinerary;
+
+/**
+ * Runs the itinerary search of an {@link ItinerarySearchService} on several threads. The search
+ * below each first flight doesn't depend on the others, so each one becomes a task of its own.
+ * When there are fewer first flights than threads, the work is split one flight deeper. The
+ * results of the tasks are put together in the order of the flights they start with, so the
+ * itineraries come out in the same order as in the sequential search.
+ * <p/>
+ * A thread pool is used rather than a fork/join pool, since fork/join isn't available on every
+ * Android version this app supports.
+ */
+class ParallelItinerarySearch {
+
+  // the number of threads to search with
+  private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+  // the deepest level the search is split at
+  private static final int MAX_SPLIT_DEPTH = 2;
+  // the threads shared by all parallel searches. They are daemon threads so they don't keep the
+  // app running
+  private static final ExecutorService pool = Executors.newFixedThreadPool(THREADS,
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "itinerary-search");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  private final ItinerarySearchService service;
+  private final ItineraryQuery query;
+
+  /**
+   * A piece of the search: the itineraries that start with a prefix of flights. A prefix that
+   * already reaches the destination is a piece on its own.
+   */
+  private static class Piece {
+
+    private final PathNode prefix;
+    private final BitSet visited;
+    private final boolean complete;
+    private Future<ArrayList<Itinerary>> result;
+
+    /**
+     * Creates a new piece.
+     *
+     * @param prefix   the first flights of the itineraries (null if there are none).
+     * @param visited  the ids of the locations visited before the last flight of the prefix.
+     * @param complete true if the prefix reaches the destination.
+     */
+    private Piece(PathNode prefix, BitSet visited, boolean complete) {
+      this.prefix = prefix;
+      this.visited = visited;
+      this.complete = complete;
+    }
+  }
+
+  /**
+   * Creates a new parallel search for the given query.
+   *
+   * @param service the service whose search is run in parallel.
+   * @param query   the query to search for.
+   */
+  ParallelItinerarySearch(ItinerarySearchService service, ItineraryQuery query) {
+    this.service = service;
+    this.query = query;
+  }
+
+  /**
+   * Returns all the valid itineraries for the query, in the same order as the sequential
+   * search.
+   *
+   * @return the valid itineraries for the query.
+   */
+  ArrayList<Itinerary> search() {
+    // start with one piece per first flight, and split one level deeper while there are too
+    // few pieces to keep the threads busy
+    ArrayList<Piece> pieces = this.split(new Piece(null, new BitSet(), false));
+    for (int depth = 1; depth < MAX_SPLIT_DEPTH && pieces.size() < THREADS; depth++) {
+      ArrayList<Piece> deeper = new ArrayList<Piece>();
+      for (Piece piece : pieces) {
+        if (piece.complete) {
+          deeper.add(piece);
+        } else {
+          deeper.addAll(this.split(piece));
+        }
+      }
+      pieces = deeper;
+    }
+
+    // search the pieces in parallel
+    for (final Piece piece : pieces) {
+      if (!piece.complete) {
+        piece.result = pool.submit(new Callable<ArrayList<Itinerary>>() {
+          @Override
+          public ArrayList<Itinerary> call() {
+            ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+            service.search(piece.prefix.getFlight().getDestinationId(), query, piece.prefix,
+                    (BitSet) piece.visited.clone(), itineraries);
+            return itineraries;
+          }
+        });
+      }
+    }
+
+    // put the results together in the order of the pieces
+    ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+    for (Piece piece : pieces) {
+      if (piece.complete) {
+        itineraries.add(piece.prefix.toItinerary());
+      } else {
+        itineraries.addAll(this.await(piece.result));
+      }
+    }
+    return itineraries;
+  }
+
+  /**
+   * Splits the piece into one piece per flight that can follow its prefix, in the same order as
+   * the sequential search looks at them.
+   *
+   * @param piece the piece to split.
+   * @return the pieces one flight deeper.
+   */
+  private ArrayList<Piece> split(Piece piece) {
+    int location = piece.prefix == null ? this.query.getOriginId()
+            : piece.prefix.getFlight().getDestinationId();
+    Flight previous = piece.prefix == null ? null : piece.prefix.getFlight();
+    BitSet visited = (BitSet) piece.visited.clone();
+    visited.set(location);
+
+    ArrayList<Piece> pieces = new ArrayList<Piece>();
+    for (Flight flight : this.query.nextFlights(this.service.getFlightDatabase(), previous)) {
+      PathNode prefix = new PathNode(flight, piece.prefix);
+      boolean complete = this.query.endsWith(flight);
+      // don't go past the limits of the query or back to a location that was already visited
+      if (prefix.isWithinLimits(this.query)
+              && (complete || !visited.get(flight.getDestinationId()))) {
+        pieces.add(new Piece(prefix, visited, complete));
+      }
+    }
+    return pieces;
+  }
+
+  /**
+   * Waits for the result of a task.
+   *
+   * @param result the result of the task.
+   * @return the itineraries found by the task.
+   */
+  private ArrayList<Itinerary> await(Future<ArrayList<Itinerary>> result) {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while searching for itineraries", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Itinerary search failed", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,278 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+/**
+ * A multi-criteria search for the itineraries of a query that are Pareto optimal in total cost,
+ * total travel time and number of flights. That is, no other itinerary is at least as good in
+ * all three and better in one of them.
+ * <p/>
+ * The search works in rounds like RAPTOR: round n extends the partial itineraries of n - 1
+ * flights by one flight. Every flight keeps a bag of the partial itineraries that end with it,
+ * and a partial itinerary is dropped as soon as another one in the bag dominates it, or an
+ * itinerary that was already found dominates every way of completing it.
+ */
+class ParetoSearch {
+
+  private final FlightDatabase flightDatabase;
+  private final ItineraryQuery query;
+
+  /**
+   * A partial itinerary that ends with a flight.
+   */
+  private static class Label {
+
+    private final Flight flight;
+    private final Label parent;
+    private final double cost;
+    private final long start;
+    private final long arrival;
+    private final int legs;
+    // the ids of the locations the partial itinerary has departed from
+    private final BitSet locations;
+    // true once another label dominates this one
+    private boolean dominated = false;
+
+    /**
+     * Creates a new label for the partial itinerary that continues the parent with the flight.
+     *
+     * @param flight the last flight of the partial itinerary.
+     * @param parent the partial itinerary before the flight (null if the flight is the first).
+     */
+    private Label(Flight flight, Label parent) {
+      this.flight = flight;
+      this.parent = parent;
+      this.arrival = flight.getArrivalMinutes();
+      if (parent == null) {
+        this.cost = flight.getCost();
+        this.start = flight.getDepartureMinutes();
+        this.legs = 1;
+        this.locations = new BitSet();
+      } else {
+        this.cost = parent.cost + flight.getCost();
+        this.start = parent.start;
+        this.legs = parent.legs + 1;
+        this.locations = (BitSet) parent.locations.clone();
+      }
+      this.locations.set(flight.getOriginId());
+    }
+
+    /**
+     * Returns true if this partial itinerary has departed from every location the other one has.
+     *
+     * @param other the other label.
+     * @return true if this partial itinerary has departed from every location of the other.
+     */
+    private boolean hasVisitedAll(Label other) {
+      BitSet missing = (BitSet) other.locations.clone();
+      missing.andNot(this.locations);
+      return missing.isEmpty();
+    }
+
+    /**
+     * Returns the travel time of the partial itinerary in minutes.
+     *
+     * @return the travel time of the partial itinerary in minutes.
+     */
+    private long travelTime() {
+      return this.arrival - this.start;
+    }
+
+    /**
+     * Returns true if the partial itinerary is within the limits of the given query on the
+     * number of flights, the total cost and the total travel time.
+     *
+     * @param query the query whose limits to check.
+     * @return true if the partial itinerary is within the limits of the query.
+     */
+    private boolean isWithinLimits(ItineraryQuery query) {
+      return query.withinLimits(this.legs, this.cost, this.start, this.flight);
+    }
+
+    /**
+     * Returns true if this label is at least as good as the other label in every criterion and
+     * better in at least one.
+     *
+     * @param other the label to compare with.
+     * @return true if this label dominates the other label.
+     */
+    private boolean dominates(Label other) {
+      return this.cost <= other.cost && this.travelTime() <= other.travelTime()
+              && this.legs <= other.legs && (this.cost < other.cost
+              || this.travelTime() < other.travelTime() || this.legs < other.legs);
+    }
+
+    /**
+     * Returns the itinerary of the flights of this label.
+     *
+     * @return the itinerary of the flights of this label.
+     */
+    private Itinerary toItinerary() {
+      ArrayList<Flight> flights = new ArrayList<Flight>(this.legs);
+      for (Label label = this; label != null; label = label.parent) {
+        flights.add(label.flight);
+      }
+      Collections.reverse(flights);
+      return new Itinerary(flights);
+    }
+  }
+
+  // the cheapest first, then the fastest, then the fewest flights
+  private static final Comparator<Label> CRITERIA_ORDER = new Comparator<Label>() {
+    @Override
+    public int compare(Label label1, Label label2) {
+      int result = Double.compare(label1.cost, label2.cost);
+      if (result == 0 && label1.travelTime() != label2.travelTime()) {
+        result = label1.travelTime() < label2.travelTime() ? -1 : 1;
+      }
+      if (result == 0 && label1.legs != label2.legs) {
+        result = label1.legs < label2.legs ? -1 : 1;
+      }
+      return result;
+    }
+  };
+
+  /**
+   * Creates a new Pareto search for the given query.
+   *
+   * @param flightDatabase the database of the flights to search.
+   * @param query          the query to search for.
+   */
+  ParetoSearch(FlightDatabase flightDatabase, ItineraryQuery query) {
+    this.flightDatabase = flightDatabase;
+    this.query = query;
+  }
+
+  /**
+   * Returns the Pareto optimal itineraries for the query, sorted by total cost, then travel time,
+   * then number of flights.
+   *
+   * @return the Pareto optimal itineraries for the query.
+   */
+  ArrayList<Itinerary> search() {
+    // the partial itineraries ending with each flight, keyed by flight number
+    HashMap<String, ArrayList<Label>> bags = new HashMap<String, ArrayList<Label>>();
+    // the itineraries that reach the destination and aren't dominated so far
+    ArrayList<Label> found = new ArrayList<Label>();
+
+    // round 1: the first flights
+    ArrayList<Label> round = new ArrayList<Label>();
+    for (Flight flight : this.query.nextFlights(this.flightDatabase, null)) {
+      Label label = new Label(flight, null);
+      if (label.isWithinLimits(this.query)) {
+        this.offer(label, bags, found, round);
+      }
+    }
+    // every later round adds one flight to the partial itineraries of the round before
+    while (!round.isEmpty()) {
+      ArrayList<Label> nextRound = new ArrayList<Label>();
+      for (Label label : round) {
+        // skip the labels that were dominated after they were made
+        if (label.dominated || this.cannotImprove(label, found)) {
+          continue;
+        }
+        for (Flight flight : this.query.nextFlights(this.flightDatabase, label.flight)) {
+          // don't go back to a location that was already visited
+          if (this.query.endsWith(flight) || !label.locations.get(flight.getDestinationId())) {
+            Label next = new Label(flight, label);
+            // or past the limits of the query
+            if (next.isWithinLimits(this.query)) {
+              this.offer(next, bags, found, nextRound);
+            }
+          }
+        }
+      }
+      round = nextRound;
+    }
+
+    Collections.sort(found, CRITERIA_ORDER);
+    ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+    for (Label label : found) {
+      itineraries.add(label.toItinerary());
+    }
+    return itineraries;
+  }
+
+  /**
+   * Adds the new label to the bag of its flight unless a label in the bag dominates it. Labels
+   * that reach the destination go to the found itineraries and the others to the next round.
+   *
+   * @param label     the new label.
+   * @param bags      the bags of labels of every flight.
+   * @param found     the itineraries found so far.
+   * @param nextRound the labels to extend in the next round.
+   */
+  private void offer(Label label, HashMap<String, ArrayList<Label>> bags, ArrayList<Label> found,
+                     ArrayList<Label> nextRound) {
+    if (this.query.endsWith(label.flight)) {
+      // keep the itinerary if no itinerary found so far dominates it, and drop the ones it
+      // dominates
+      for (Label other : found) {
+        if (other.dominates(label)) {
+          return;
+        }
+      }
+      Iterator<Label> iterator = found.iterator();
+      while (iterator.hasNext()) {
+        if (label.dominates(iterator.next())) {
+          iterator.remove();
+        }
+      }
+      found.add(label);
+    } else {
+      if (this.cannotImprove(label, found)) {
+        return;
+      }
+      ArrayList<Label> bag = bags.get(label.flight.getFlightnum());
+      if (bag == null) {
+        bag = new ArrayList<Label>();
+        bags.put(label.flight.getFlightnum(), bag);
+      }
+      // a label in the bag can only stand in for the new one if it hasn't visited any location
+      // the new one hasn't, so it can be completed in every way the new one can
+      for (Label other : bag) {
+        if (other.dominates(label) && label.hasVisitedAll(other)) {
+          return;
+        }
+      }
+      Iterator<Label> iterator = bag.iterator();
+      while (iterator.hasNext()) {
+        Label other = iterator.next();
+        if (label.dominates(other) && other.hasVisitedAll(label)) {
+          other.dominated = true;
+          iterator.remove();
+        }
+      }
+      bag.add(label);
+      nextRound.add(label);
+    }
+  }
+
+  /**
+   * Returns true if an itinerary that was already found dominates every itinerary that the
+   * partial itinerary of the label can be completed to. A completion costs at least as much,
+   * takes longer and has at least one more flight.
+   *
+   * @param label the label of the partial itinerary.
+   * @param found the itineraries found so far.
+   * @return true if the label can't lead to a Pareto optimal itinerary.
+   */
+  private boolean cannotImprove(Label label, ArrayList<Label> found) {
+    for (Label other : found) {
+      if (other.cost <= label.cost && other.travelTime() <= label.travelTime()
+              && other.legs <= label.legs + 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
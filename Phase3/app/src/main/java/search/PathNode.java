@@ -0,0 +1,108 @@
+package search;
+
+import backend.Flight;
+import backend.Itinerary;
+
+/**
+ * A partial itinerary made of its last flight and the partial itinerary before it. Path nodes
+ * never change, so partial itineraries that start with the same flights share the nodes of
+ * those flights, and adding a flight to a partial itinerary doesn't copy it. The flights are
+ * only put into an {@link Itinerary} once the partial itinerary is complete.
+ */
+final class PathNode {
+
+  private final Flight flight;
+  private final PathNode parent;
+  private final int legs;
+  // the departure of the first flight in minutes
+  private final long start;
+  private final double cost;
+
+  /**
+   * Creates a new path node that continues the parent with the flight.
+   *
+   * @param flight the last flight of the partial itinerary.
+   * @param parent the partial itinerary before the flight (null if the flight is the first).
+   */
+  PathNode(Flight flight, PathNode parent) {
+    this.flight = flight;
+    this.parent = parent;
+    this.legs = parent == null ? 1 : parent.legs + 1;
+    this.start = parent == null ? flight.getDepartureMinutes() : parent.start;
+    this.cost = parent == null ? flight.getCost() : parent.cost + flight.getCost();
+  }
+
+  /**
+   * Returns the last flight of the partial itinerary.
+   *
+   * @return the last flight of the partial itinerary.
+   */
+  Flight getFlight() {
+    return flight;
+  }
+
+  /**
+   * Returns the partial itinerary before the last flight.
+   *
+   * @return the partial itinerary before the last flight (null if there is none).
+   */
+  PathNode getParent() {
+    return parent;
+  }
+
+  /**
+   * Returns the number of flights in the partial itinerary.
+   *
+   * @return the number of flights in the partial itinerary.
+   */
+  int getLegs() {
+    return legs;
+  }
+
+  /**
+   * Returns the departure of the first flight of the partial itinerary.
+   *
+   * @return the departure of the first flight in minutes.
+   */
+  long getStart() {
+    return start;
+  }
+
+  /**
+   * Returns the total cost of the flights of the partial itinerary.
+   *
+   * @return the total cost of the flights.
+   */
+  double getCost() {
+    return cost;
+  }
+
+  /**
+   * Returns true if the partial itinerary is within the limits of the given query on the number
+   * of flights, the total cost and the total travel time.
+   *
+   * @param query the query whose limits to check.
+   * @return true if the partial itinerary is within the limits of the query.
+   */
+  boolean isWithinLimits(ItineraryQuery query) {
+    return query.withinLimits(this.legs, this.cost, this.start, this.flight);
+  }
+
+  /**
+   * Returns the itinerary of the flights of this partial itinerary, in order.
+   *
+   * @return the itinerary of the flights of this partial itinerary.
+   */
+  Itinerary toItinerary() {
+    // walk back to the first flight, filling the flights in from the end
+    Flight[] flights = new Flight[this.legs];
+    for (PathNode node = this; node != null; node = node.parent) {
+      flights[node.legs - 1] = node.flight;
+    }
+    Itinerary itinerary = new Itinerary();
+    for (Flight flight : flights) {
+      itinerary.addFlight(flight);
+    }
+    return itinerary;
+  }
+}
@@ -0,0 +1,247 @@
+package search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import backend.Flight;
+import databases.FlightChange;
+import databases.FlightDatabase;
+
+/**
+ * An index of the airports that can be reached from each airport on each travel day. It is used
+ * to answer queries that have no itineraries without searching.
+ * <p/>
+ * Every flight keeps the set of airports that can be reached by taking it and then any valid
+ * connections. A connection always departs after the flight before it arrives, so the flights
+ * form a directed acyclic graph, and the set of a flight is worked out from the sets of its
+ * connections the first time it is needed. The airports that can be reached from an airport on
+ * a day are the union of the sets of the flights that depart from it that day, and they are
+ * worked out the first time a query for that day is checked. Only the most recent days are kept.
+ * <p/>
+ * When flights change, the index catches up with the change log of the database: the sets of
+ * the changed flights and of the flights that can reach them are dropped, along with the days
+ * they depart on, and everything else is kept. If the log no longer reaches back far enough,
+ * or the index holds the sets of too many flights, the index starts again.
+ * <p/>
+ * The index ignores seats and the rule that an itinerary doesn't visit an airport twice, so it
+ * can only say too much is reachable, never too little.
+ */
+class ReachabilityIndex {
+
+  // the number of minutes in a day
+  private static final long MINUTES_PER_DAY = 24 * 60;
+  // the most days the index keeps
+  private static final int MAX_DAYS = 64;
+  // the most flights the index keeps sets for before it starts again
+  private static final int MAX_FLIGHTS = 20000;
+
+  private final FlightDatabase flightDatabase;
+  // lets queries for days that are already worked out check the index at the same time, while
+  // catching up with the database and working out days are done one at a time
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  // the modification count of the database the index is up to date with (-1 if none)
+  private long version = -1;
+  // the ids of the airports that can be reached by taking each flight, keyed by flight number.
+  // Each set takes a bit per airport. A set is dropped when its flight changes or is removed,
+  // but not when the days that needed it are dropped, so the index starts again once it holds
+  // too many
+  private final HashMap<String, BitSet> byFlight = new HashMap<String, BitSet>();
+  // the ids of the airports that can be reached from each airport on each day, keyed by date and
+  // indexed by the id of the airport. The oldest day is dropped once there are too many
+  private final LinkedHashMap<String, ArrayList<BitSet>> byDay =
+          new LinkedHashMap<String, ArrayList<BitSet>>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ArrayList<BitSet>> eldest) {
+              return this.size() > MAX_DAYS;
+            }
+          };
+
+  /**
+   * Creates a new reachability index for the flights of the given database. Nothing is worked
+   * out until the index is first used.
+   *
+   * @param flightDatabase the database of the flights to index.
+   */
+  ReachabilityIndex(FlightDatabase flightDatabase) {
+    this.flightDatabase = flightDatabase;
+  }
+
+  /**
+   * Returns true if the destination of the given query can be reached from its origin by
+   * flights that start on the date of the query. If this is false, the query has no
+   * itineraries.
+   *
+   * @param query the query to check.
+   * @return false if the query certainly has no itineraries.
+   */
+  boolean mayReach(ItineraryQuery query) {
+    int origin = query.getOriginId();
+    int destination = query.getDestinationId();
+    if (origin < 0 || destination < 0) {
+      return false;
+    }
+    ArrayList<BitSet> day = null;
+    // most queries are for days that are already worked out
+    this.lock.readLock().lock();
+    try {
+      if (this.version == this.flightDatabase.getModificationCount()) {
+        day = this.byDay.get(query.getDate());
+      }
+    } finally {
+      this.lock.readLock().unlock();
+    }
+    if (day == null) {
+      this.lock.writeLock().lock();
+      try {
+        this.catchUp();
+        day = this.byDay.get(query.getDate());
+        if (day == null) {
+          if (this.byFlight.size() > MAX_FLIGHTS) {
+            // a day may depend on any set, so the days have to go along with the sets
+            this.byFlight.clear();
+            this.byDay.clear();
+          }
+          day = this.buildDay(query.getDate());
+          this.byDay.put(query.getDate(), day);
+        }
+      } finally {
+        this.lock.writeLock().unlock();
+      }
+    }
+    return origin < day.size() && day.get(origin).get(destination);
+  }
+
+  /**
+   * Brings the index up to date with the changes made to the database since it was last used.
+   * This must be called with the write lock held.
+   */
+  private void catchUp() {
+    long modifications = this.flightDatabase.getModificationCount();
+    if (this.version == modifications) {
+      return;
+    }
+    ArrayList<FlightChange> changes =
+            this.version < 0 ? null : this.flightDatabase.getChangesSince(this.version);
+    if (changes == null) {
+      // the changes aren't known, so start again
+      this.byFlight.clear();
+      this.byDay.clear();
+    } else {
+      for (FlightChange change : changes) {
+        this.forget(change);
+      }
+    }
+    this.version = modifications;
+  }
+
+  /**
+   * Drops everything the given change to a flight may have made out of date: the set of the
+   * flight, the sets of the flights that can reach it, and the days they depart on.
+   *
+   * @param change the change to a flight.
+   */
+  private void forget(FlightChange change) {
+    this.byFlight.remove(change.getFlightNum());
+    this.forgetDay(change.getOldDepartureDate());
+    this.forgetDay(change.getNewDepartureDate());
+    // go back through the flights that can reach the flight. A flight whose set isn't kept
+    // can't be reached from a flight whose set is, so there is no need to go back past it
+    ArrayDeque<String> toForget = new ArrayDeque<String>(change.getPreviousFlightNums());
+    while (!toForget.isEmpty()) {
+      String flightNum = toForget.pop();
+      if (this.byFlight.remove(flightNum) == null) {
+        continue;
+      }
+      Flight flight = this.flightDatabase.getFlight(flightNum);
+      // a flight that is no longer in the database is forgotten by its own change
+      if (flight != null) {
+        this.forgetDay(flight.getDepartureDateTime().substring(0, 10));
+        for (Flight previous : this.flightDatabase.getPreviousFlights(flight)) {
+          toForget.push(previous.getFlightnum());
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops the given day from the index.
+   *
+   * @param date the day (in the format YYYY-MM-DD, or null for none).
+   */
+  private void forgetDay(String date) {
+    if (date != null) {
+      this.byDay.remove(date);
+    }
+  }
+
+  /**
+   * Returns the ids of the airports that can be reached by taking the given flight, working out
+   * the sets of the flights after it that aren't known yet, latest first.
+   *
+   * @param flight a flight of the database.
+   * @return the ids of the airports that can be reached by taking the flight.
+   */
+  private BitSet reachableFrom(Flight flight) {
+    ArrayDeque<Flight> toWorkOut = new ArrayDeque<Flight>();
+    toWorkOut.push(flight);
+    while (!toWorkOut.isEmpty()) {
+      Flight next = toWorkOut.peek();
+      if (this.byFlight.containsKey(next.getFlightnum())) {
+        toWorkOut.pop();
+        continue;
+      }
+      // the set of a flight can only be worked out once its connections have sets
+      ArrayList<Flight> connections = this.flightDatabase.getConnections(next);
+      boolean ready = true;
+      for (Flight connection : connections) {
+        if (!this.byFlight.containsKey(connection.getFlightnum())) {
+          toWorkOut.push(connection);
+          ready = false;
+        }
+      }
+      if (ready) {
+        BitSet reachable = new BitSet();
+        reachable.set(next.getDestinationId());
+        for (Flight connection : connections) {
+          reachable.or(this.byFlight.get(connection.getFlightnum()));
+        }
+        this.byFlight.put(next.getFlightnum(), reachable);
+        toWorkOut.pop();
+      }
+    }
+    return this.byFlight.get(flight.getFlightnum());
+  }
+
+  /**
+   * Works out the airports that can be reached from each airport by flights that start on the
+   * given day. The flights of the day come from the departure index of the database.
+   *
+   * @param date the day (in the format YYYY-MM-DD).
+   * @return the ids of the airports that can be reached, indexed by the id of the airport they
+   *         are reached from.
+   */
+  private ArrayList<BitSet> buildDay(String date) {
+    ArrayList<BitSet> day = new ArrayList<BitSet>();
+    long endOfDate = Flight.minutesOf(date + " 00:00") + MINUTES_PER_DAY;
+    Iterator<Flight> flights = this.flightDatabase.getFlightsByDeparture(date);
+    while (flights.hasNext()) {
+      Flight flight = flights.next();
+      // stop at the first flight of the next day
+      if (flight.getDepartureMinutes() >= endOfDate) {
+        break;
+      }
+      int origin = flight.getOriginId();
+      while (day.size() <= origin) {
+        day.add(new BitSet());
+      }
+      day.get(origin).or(this.reachableFrom(flight));
+    }
+    return day;
+  }
+}
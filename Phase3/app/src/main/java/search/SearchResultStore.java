@@ -0,0 +1,75 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import backend.Itinerary;
+
+/**
+ * Holds the itineraries of the latest search of each user for the current session. The store
+ * lives in memory only and is never saved, so search results don't end up in the user
+ * database. Users are identified by their email.
+ */
+public class SearchResultStore {
+
+  // the itineraries of the latest search, keyed by the email of the user who searched
+  private static final HashMap<String, ArrayList<Itinerary>> results = new HashMap<>();
+
+  /**
+   * Returns the itineraries of the latest search of the user with the given email. The list is
+   * empty if the user hasn't searched in this session.
+   *
+   * @param email the email of the user.
+   * @return the itineraries of the latest search of the user.
+   */
+  public static synchronized ArrayList<Itinerary> get(String email) {
+    ArrayList<Itinerary> itineraries = results.get(email);
+    if (itineraries == null) {
+      itineraries = new ArrayList<Itinerary>();
+      results.put(email, itineraries);
+    }
+    return itineraries;
+  }
+
+  /**
+   * Replaces the itineraries of the latest search of the user with the given email.
+   *
+   * @param email       the email of the user.
+   * @param itineraries the itineraries to store.
+   */
+  public static synchronized void put(String email, ArrayList<Itinerary> itineraries) {
+    results.put(email, itineraries);
+  }
+
+  /**
+   * Moves the itineraries of the user with the old email to the new email (i.e. when the user
+   * changes their email).
+   *
+   * @param oldEmail the email the user had.
+   * @param newEmail the email the user has now.
+   */
+  public static synchronized void move(String oldEmail, String newEmail) {
+    ArrayList<Itinerary> itineraries = results.remove(oldEmail);
+    if (itineraries == null) {
+      results.remove(newEmail);
+    } else {
+      results.put(newEmail, itineraries);
+    }
+  }
+
+  /**
+   * Clears the itineraries of the user with the given email.
+   *
+   * @param email the email of the user.
+   */
+  public static synchronized void clear(String email) {
+    results.remove(email);
+  }
+
+  /**
+   * Clears the itineraries of every user (i.e. at the end of a session).
+   */
+  public static synchronized void clearAll() {
+    results.clear();
+  }
+}
@@ -0,0 +1,77 @@
+package search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the connection scan search finds the same best itineraries as the full search
+ * when the labels it keeps could later break the limits of the query.
+ */
+public class ConnectionScanSearchTest {
+
+  /**
+   * Returns the itineraries of the given list as a string, one per line.
+   *
+   * @param itineraries the itineraries.
+   * @return the itineraries as a string.
+   */
+  private static String asString(ArrayList<Itinerary> itineraries) {
+    String message = "";
+    for (Itinerary itinerary : itineraries) {
+      message += itinerary.toString() + "\n";
+    }
+    return message;
+  }
+
+  @Test
+  public void priceLimitKeepsCheaperEarlierStart() {
+    ArrayList<Flight> flights = new ArrayList<Flight>();
+    flights.add(new Flight("CS1", "2016-09-01 08:00", "2016-09-01 09:30", "AC", "CSO", "CSA",
+            100, 10));
+    flights.add(new Flight("CS2", "2016-09-01 09:00", "2016-09-01 10:00", "AC", "CSO", "CSA",
+            150, 10));
+    flights.add(new Flight("CS3", "2016-09-01 11:00", "2016-09-01 12:00", "AC", "CSA", "CSB",
+            10, 10));
+    flights.add(new Flight("CS4", "2016-09-01 13:00", "2016-09-01 14:00", "AC", "CSB", "CSD",
+            45, 10));
+    ItinerarySearchService service = new ItinerarySearchService(new FlightDatabase(flights));
+    ItineraryQuery query = new ItineraryQuery("2016-09-01", "CSO", "CSD");
+    query.setMaxPrice(200);
+
+    ArrayList<Itinerary> all = service.search(query).getItineraries();
+    assertEquals(1, all.size());
+    assertEquals(asString(all), asString(service.searchEarliestArrival(query).getItineraries()));
+    assertEquals(asString(all), asString(service.searchFastest(query, 1).getItineraries()));
+  }
+
+  @Test
+  public void visitedLocationsKeepEarlierStart() {
+    ArrayList<Flight> flights = new ArrayList<Flight>();
+    flights.add(new Flight("CV1", "2016-09-01 08:00", "2016-09-01 09:00", "AC", "CVO", "CVA",
+            100, 10));
+    flights.add(new Flight("CV2", "2016-09-01 09:00", "2016-09-01 09:30", "AC", "CVO", "CVC",
+            100, 10));
+    flights.add(new Flight("CV3", "2016-09-01 10:00", "2016-09-01 10:30", "AC", "CVC", "CVA",
+            100, 10));
+    flights.add(new Flight("CV4", "2016-09-01 11:00", "2016-09-01 12:00", "AC", "CVA", "CVB",
+            100, 10));
+    flights.add(new Flight("CV5", "2016-09-01 12:30", "2016-09-01 13:00", "AC", "CVB", "CVC",
+            100, 10));
+    flights.add(new Flight("CV6", "2016-09-01 16:00", "2016-09-01 16:30", "AC", "CVC", "CVD",
+            100, 10));
+    ItinerarySearchService service = new ItinerarySearchService(new FlightDatabase(flights));
+    ItineraryQuery query = new ItineraryQuery("2016-09-01", "CVO", "CVD");
+
+    ArrayList<Itinerary> all = service.search(query).getItineraries();
+    assertEquals(1, all.size());
+    assertEquals(asString(all), asString(service.searchEarliestArrival(query).getItineraries()));
+    assertEquals(asString(all), asString(service.searchFastest(query, 1).getItineraries()));
+  }
+}
@@ -0,0 +1,594 @@
+package search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import backend.Flight;
+import backend.Itinerary;
+import databases.FlightDatabase;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks every search of the itinerary search service against the original recursive search,
+ * which builds every sequence of flights from the origin to the destination and then keeps the
+ * valid ones. The flights are small random schedules, so the recursive search stays quick.
+ */
+public class ItinerarySearchServiceTest {
+
+  // the number of minutes in a day
+  private static final int MINUTES_PER_DAY = 24 * 60;
+  // the airports, dates and airlines of the schedules
+  private static final String[] AIRPORTS = {"SV0", "SV1", "SV2", "SV3", "SV4"};
+  private static final String[] DATES = {"2016-09-01", "2016-09-02", "2016-09-03"};
+  private static final String[] AIRLINES = {"AA", "BB"};
+  // the seeds of the schedules to check
+  private static final long[] SEEDS = {1, 2, 3, 4};
+
+  /**
+   * The limits of a query, kept so the recursive search can check them itself.
+   */
+  private static class Limits {
+
+    private int maxLegs = Integer.MAX_VALUE;
+    private double maxPrice = Double.POSITIVE_INFINITY;
+    private long maxDurationMinutes = Long.MAX_VALUE;
+    private long maxLayoverMinutes = Long.MAX_VALUE;
+    private String allowedAirline = null;
+    private String excludedAirline = null;
+
+    /**
+     * Returns a query with these limits.
+     *
+     * @param date        the date of the query.
+     * @param origin      the origin of the query.
+     * @param destination the destination of the query.
+     * @return the query.
+     */
+    private ItineraryQuery query(String date, String origin, String destination) {
+      ItineraryQuery query = new ItineraryQuery(date, origin, destination);
+      if (this.maxLegs != Integer.MAX_VALUE) {
+        query.setMaxLegs(this.maxLegs);
+      }
+      if (this.maxPrice != Double.POSITIVE_INFINITY) {
+        query.setMaxPrice(this.maxPrice);
+      }
+      if (this.maxDurationMinutes != Long.MAX_VALUE) {
+        query.setMaxDuration(this.maxDurationMinutes / 60.0);
+      }
+      if (this.maxLayoverMinutes != Long.MAX_VALUE) {
+        query.setMaxLayover(this.maxLayoverMinutes / 60.0);
+      }
+      if (this.allowedAirline != null) {
+        query.setAllowedAirlines(Collections.singletonList(this.allowedAirline));
+      }
+      if (this.excludedAirline != null) {
+        query.setExcludedAirlines(Collections.singletonList(this.excludedAirline));
+      }
+      return query;
+    }
+
+    /**
+     * Returns true if the itinerary is within these limits.
+     *
+     * @param itinerary the itinerary to check.
+     * @return true if the itinerary is within these limits.
+     */
+    private boolean allow(Itinerary itinerary) {
+      if (itinerary.numFlights() > this.maxLegs || itinerary.getTotalCost() > this.maxPrice
+              || itinerary.totalTravelMinutes() > this.maxDurationMinutes) {
+        return false;
+      }
+      List<Flight> flights = itinerary.getFlights();
+      for (int i = 0; i < flights.size(); i++) {
+        Flight flight = flights.get(i);
+        if (i > 0 && flight.getDepartureMinutes() - flights.get(i - 1).getArrivalMinutes()
+                > this.maxLayoverMinutes) {
+          return false;
+        }
+        if ((this.allowedAirline != null && !this.allowedAirline.equals(flight.getAirline()))
+                || flight.getAirline().equals(this.excludedAirline)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Returns the limits every search is checked with: none, each limit on its own, and a few
+   * together.
+   *
+   * @return the limits to check.
+   */
+  private static List<Limits> allLimits() {
+    ArrayList<Limits> all = new ArrayList<Limits>();
+    all.add(new Limits());
+    Limits limits = new Limits();
+    limits.maxLegs = 2;
+    all.add(limits);
+    limits = new Limits();
+    limits.maxPrice = 250;
+    all.add(limits);
+    limits = new Limits();
+    limits.maxDurationMinutes = 8 * 60;
+    all.add(limits);
+    limits = new Limits();
+    limits.maxLayoverMinutes = 2 * 60;
+    all.add(limits);
+    limits = new Limits();
+    limits.allowedAirline = "AA";
+    all.add(limits);
+    limits = new Limits();
+    limits.excludedAirline = "AA";
+    limits.maxPrice = 300;
+    limits.maxLegs = 3;
+    limits.maxDurationMinutes = 12 * 60;
+    all.add(limits);
+    return all;
+  }
+
+  /**
+   * Returns a random schedule of flights between the airports over the dates. Some flights are
+   * full.
+   *
+   * @param seed the seed of the schedule.
+   * @return the flights of the schedule.
+   */
+  private static ArrayList<Flight> schedule(long seed) {
+    Random random = new Random(seed);
+    ArrayList<Flight> flights = new ArrayList<Flight>();
+    for (int i = 0; i < 36; i++) {
+      int origin = random.nextInt(AIRPORTS.length);
+      int destination = (origin + 1 + random.nextInt(AIRPORTS.length - 1)) % AIRPORTS.length;
+      int departure = random.nextInt(2) * MINUTES_PER_DAY + 6 * 60 + random.nextInt(16 * 60);
+      int arrival = departure + 30 + random.nextInt(4 * 60);
+      flights.add(new Flight("SV" + seed + "-" + i, dateTimeOf(departure), dateTimeOf(arrival),
+              AIRLINES[random.nextInt(AIRLINES.length)], AIRPORTS[origin], AIRPORTS[destination],
+              50 + random.nextInt(150), random.nextInt(6) == 0 ? 0 : 5));
+    }
+    return flights;
+  }
+
+  /**
+   * Returns the date and time the given number of minutes after the start of the first date
+   * falls on.
+   *
+   * @param minutes the number of minutes since the start of the first date.
+   * @return the date and time (in the format YYYY-MM-DD hh:mm).
+   */
+  private static String dateTimeOf(int minutes) {
+    int time = minutes % MINUTES_PER_DAY;
+    return String.format("%s %02d:%02d", DATES[minutes / MINUTES_PER_DAY], time / 60, time % 60);
+  }
+
+  /**
+   * Returns every sequence of flights from the origin to the destination that doesn't visit a
+   * location twice, like the original search did.
+   *
+   * @param flightDatabase the database of the flights.
+   * @param origin         the location to search from.
+   * @param destination    the destination.
+   * @param locations      the locations visited so far.
+   * @return every sequence of flights from the origin to the destination.
+   */
+  private static ArrayList<ArrayList<Flight>> sequences(FlightDatabase flightDatabase,
+                                                        String origin, String destination,
+                                                        ArrayList<String> locations) {
+    ArrayList<ArrayList<Flight>> allFlights = new ArrayList<ArrayList<Flight>>();
+    for (Flight flight : flightDatabase.getFlightsOfOrigin(origin)) {
+      locations.add(origin);
+      if (flight.getDestination().equals(destination)) {
+        ArrayList<Flight> newFlight = new ArrayList<Flight>();
+        newFlight.add(flight);
+        allFlights.add(newFlight);
+      } else if (!locations.contains(flight.getDestination())) {
+        for (ArrayList<Flight> subFlights : sequences(flightDatabase, flight.getDestination(),
+                destination, locations)) {
+          subFlights.add(0, flight);
+          allFlights.add(subFlights);
+        }
+      }
+      locations.remove(locations.size() - 1);
+    }
+    return allFlights;
+  }
+
+  /**
+   * Returns true if every flight has room and every wait between flights is valid, like the
+   * original search checked.
+   *
+   * @param flights the flights of an itinerary.
+   * @return true if the flights make a valid itinerary.
+   */
+  private static boolean isValid(List<Flight> flights) {
+    for (int i = 0; i < flights.size(); i++) {
+      if (flights.get(i).isfull()) {
+        return false;
+      }
+      if (i > 0) {
+        double waitTime = flights.get(i - 1).getWaitTime(flights.get(i));
+        if (waitTime < Itinerary.MIN_WAIT_TIME || waitTime > Itinerary.MAX_WAIT_TIME) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the valid itineraries the original recursive search finds for the given date and
+   * route that are within the given limits.
+   *
+   * @param flightDatabase the database of the flights.
+   * @param date           the date of the query.
+   * @param origin         the origin of the query.
+   * @param destination    the destination of the query.
+   * @param limits         the limits of the query.
+   * @return the valid itineraries, in the order the original search finds them.
+   */
+  private static ArrayList<Itinerary> recursiveSearch(FlightDatabase flightDatabase,
+                                                      String date, String origin,
+                                                      String destination, Limits limits) {
+    ArrayList<Itinerary> itineraries = new ArrayList<Itinerary>();
+    for (ArrayList<Flight> flights : sequences(flightDatabase, origin, destination,
+            new ArrayList<String>())) {
+      Itinerary itinerary = new Itinerary(flights);
+      if (itinerary.getFirstDepartureDate().equals(date) && isValid(flights)
+              && limits.allow(itinerary)) {
+        itineraries.add(itinerary);
+      }
+    }
+    return itineraries;
+  }
+
+  /**
+   * Returns the itineraries as a string, one per line.
+   *
+   * @param itineraries the itineraries.
+   * @return the itineraries as a string.
+   */
+  private static String asString(List<Itinerary> itineraries) {
+    StringBuilder message = new StringBuilder();
+    for (Itinerary itinerary : itineraries) {
+      message.append(itinerary.toString()).append("\n");
+    }
+    return message.toString();
+  }
+
+  /**
+   * Returns the total costs of the first k itineraries.
+   *
+   * @param itineraries the itineraries.
+   * @param k           the number of itineraries to look at.
+   * @return the total costs of the itineraries.
+   */
+  private static String costs(List<Itinerary> itineraries, int k) {
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < itineraries.size() && i < k; i++) {
+      message.append(String.format("%.2f ", itineraries.get(i).getTotalCost()));
+    }
+    return message.toString();
+  }
+
+  /**
+   * Returns the cost, travel time and number of flights of every given itinerary that no other
+   * given itinerary beats in one of them without being worse in another, sorted.
+   *
+   * @param itineraries the itineraries.
+   * @return the sorted criteria of the Pareto optimal itineraries.
+   */
+  private static List<String> paretoCriteria(List<Itinerary> itineraries) {
+    ArrayList<String> criteria = new ArrayList<String>();
+    for (Itinerary itinerary : itineraries) {
+      boolean dominated = false;
+      for (Itinerary other : itineraries) {
+        if (other.getTotalCost() <= itinerary.getTotalCost()
+                && other.totalTravelMinutes() <= itinerary.totalTravelMinutes()
+                && other.numFlights() <= itinerary.numFlights()
+                && (other.getTotalCost() < itinerary.getTotalCost()
+                || other.totalTravelMinutes() < itinerary.totalTravelMinutes()
+                || other.numFlights() < itinerary.numFlights())) {
+          dominated = true;
+        }
+      }
+      if (!dominated) {
+        criteria.add(criteriaOf(itinerary));
+      }
+    }
+    Collections.sort(criteria);
+    return criteria;
+  }
+
+  /**
+   * Returns the cost, travel time and number of flights of the itinerary.
+   *
+   * @param itinerary the itinerary.
+   * @return the criteria of the itinerary.
+   */
+  private static String criteriaOf(Itinerary itinerary) {
+    return String.format("%.2f/%d/%d", itinerary.getTotalCost(),
+            itinerary.totalTravelMinutes(), itinerary.numFlights());
+  }
+
+  /**
+   * Returns the given itineraries sorted by the given order. The sort is stable, so equal
+   * itineraries keep the order of the original search.
+   *
+   * @param itineraries the itineraries.
+   * @param order       the order to sort them in.
+   * @return the sorted itineraries.
+   */
+  private static ArrayList<Itinerary> sorted(List<Itinerary> itineraries,
+                                             Comparator<Itinerary> order) {
+    ArrayList<Itinerary> sorted = new ArrayList<Itinerary>(itineraries);
+    Collections.sort(sorted, order);
+    return sorted;
+  }
+
+  /**
+   * Returns the travel times (in minutes) of the first k itineraries.
+   *
+   * @param itineraries the itineraries.
+   * @param k           the number of itineraries to look at.
+   * @return the travel times of the itineraries.
+   */
+  private static String times(List<Itinerary> itineraries, int k) {
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < itineraries.size() && i < k; i++) {
+      message.append(itineraries.get(i).totalTravelMinutes()).append(' ');
+    }
+    return message.toString();
+  }
+
+  // the cheapest itinerary first
+  private static final Comparator<Itinerary> BY_COST = new Comparator<Itinerary>() {
+    @Override
+    public int compare(Itinerary itinerary1, Itinerary itinerary2) {
+      return Double.compare(itinerary1.getTotalCost(), itinerary2.getTotalCost());
+    }
+  };
+
+  // the itinerary with the shortest travel time first
+  private static final Comparator<Itinerary> BY_TIME = new Comparator<Itinerary>() {
+    @Override
+    public int compare(Itinerary itinerary1, Itinerary itinerary2) {
+      return Long.compare(itinerary1.totalTravelMinutes(), itinerary2.totalTravelMinutes());
+    }
+  };
+
+  /**
+   * Checks the given search against the recursive search for every seed, limits, date and
+   * route.
+   *
+   * @param check the check to run.
+   */
+  private static void forEveryQuery(QueryCheck check) {
+    for (long seed : SEEDS) {
+      FlightDatabase flightDatabase = new FlightDatabase(schedule(seed));
+      ItinerarySearchService service = new ItinerarySearchService(flightDatabase);
+      for (Limits limits : allLimits()) {
+        for (String date : DATES) {
+          for (String origin : AIRPORTS) {
+            for (String destination : AIRPORTS) {
+              if (!origin.equals(destination)) {
+                ItineraryQuery query = limits.query(date, origin, destination);
+                ArrayList<Itinerary> expected =
+                        recursiveSearch(flightDatabase, date, origin, destination, limits);
+                check.check(service, query, expected, seed + " " + query);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A check of one query against the itineraries the recursive search found for it.
+   */
+  private interface QueryCheck {
+
+    /**
+     * Checks one query.
+     *
+     * @param service  the service to search with.
+     * @param query    the query.
+     * @param expected the itineraries the recursive search found for the query.
+     * @param message  the message to fail with.
+     */
+    void check(ItinerarySearchService service, ItineraryQuery query,
+               ArrayList<Itinerary> expected, String message);
+  }
+
+  @Test
+  public void searchMatchesRecursiveSearch() {
+    forEveryQuery(new QueryCheck() {
+      @Override
+      public void check(ItinerarySearchService service, ItineraryQuery query,
+                        ArrayList<Itinerary> expected, String message) {
+        assertEquals(message, asString(expected), asString(service.search(query)
+                .getItineraries()));
+      }
+    });
+  }
+
+  @Test
+  public void cheapestSearchMatchesRecursiveSearch() {
+    forEveryQuery(new QueryCheck() {
+      @Override
+      public void check(ItinerarySearchService service, ItineraryQuery query,
+                        ArrayList<Itinerary> expected, String message) {
+        ArrayList<Itinerary> byCost = sorted(expected, BY_COST);
+        for (int k : new int[] {1, 3, 1000}) {
+          assertEquals(message, costs(byCost, k),
+                  costs(service.searchCheapest(query, k).getItineraries(), k));
+        }
+      }
+    });
+  }
+
+  @Test
+  public void fastestSearchMatchesRecursiveSearch() {
+    forEveryQuery(new QueryCheck() {
+      @Override
+      public void check(ItinerarySearchService service, ItineraryQuery query,
+                        ArrayList<Itinerary> expected, String message) {
+        ArrayList<Itinerary> byTime = sorted(expected, BY_TIME);
+        for (int k : new int[] {1, 3, 1000}) {
+          assertEquals(message, times(byTime, k),
+                  times(service.searchFastest(query, k).getItineraries(), k));
+        }
+      }
+    });
+  }
+
+  @Test
+  public void earliestArrivalMatchesRecursiveSearch() {
+    forEveryQuery(new QueryCheck() {
+      @Override
+      public void check(ItinerarySearchService service, ItineraryQuery query,
+                        ArrayList<Itinerary> expected, String message) {
+        // the dates and times are in the format YYYY-MM-DD hh:mm, so they sort as strings
+        String earliest = null;
+        for (Itinerary itinerary : expected) {
+          String arrival = itinerary.getLastArrivalDateTime();
+          if (earliest == null || arrival.compareTo(earliest) < 0) {
+            earliest = arrival;
+          }
+        }
+        List<Itinerary> found = service.searchEarliestArrival(query).getItineraries();
+        assertEquals(message, earliest == null ? 0 : 1, found.size());
+        if (earliest != null) {
+          assertEquals(message, earliest, found.get(0).getLastArrivalDateTime());
+        }
+      }
+    });
+  }
+
+  @Test
+  public void paretoSearchMatchesRecursiveSearch() {
+    forEveryQuery(new QueryCheck() {
+      @Override
+      public void check(ItinerarySearchService service, ItineraryQuery query,
+                        ArrayList<Itinerary> expected, String message) {
+        ArrayList<String> found = new ArrayList<String>();
+        for (Itinerary itinerary : service.searchParetoOptimal(query).getItineraries()) {
+          found.add(criteriaOf(itinerary));
+        }
+        Collections.sort(found);
+        assertEquals(message, paretoCriteria(expected), found);
+      }
+    });
+  }
+
+  @Test
+  public void parallelSearchMatchesRecursiveSearch() {
+    forEveryQuery(new QueryCheck() {
+      @Override
+      public void check(ItinerarySearchService service, ItineraryQuery query,
+                        ArrayList<Itinerary> expected, String message) {
+        assertEquals(message, asString(expected),
+                asString(service.searchParallel(query).getItineraries()));
+      }
+    });
+  }
+
+  @Test
+  public void bidirectionalSearchMatchesRecursiveSearch() {
+    forEveryQuery(new QueryCheck() {
+      @Override
+      public void check(ItinerarySearchService service, ItineraryQuery query,
+                        ArrayList<Itinerary> expected, String message) {
+        assertEquals(message, asString(expected),
+                asString(service.searchBidirectional(query).getItineraries()));
+      }
+    });
+  }
+
+  @Test
+  public void iteratorAndPagesMatchRecursiveSearch() {
+    forEveryQuery(new QueryCheck() {
+      @Override
+      public void check(ItinerarySearchService service, ItineraryQuery query,
+                        ArrayList<Itinerary> expected, String message) {
+        assertEquals(message, asString(expected),
+                asString(service.iterator(query).next(Integer.MAX_VALUE)));
+        ArrayList<Itinerary> pages = new ArrayList<Itinerary>();
+        for (int offset = 0; offset <= expected.size(); offset += 2) {
+          pages.addAll(service.searchPage(query, offset, 2).getItineraries());
+        }
+        assertEquals(message, asString(expected), asString(pages));
+      }
+    });
+  }
+
+  @Test
+  public void flexibleSearchMatchesRecursiveSearch() {
+    for (long seed : SEEDS) {
+      FlightDatabase flightDatabase = new FlightDatabase(schedule(seed));
+      ItinerarySearchService service = new ItinerarySearchService(flightDatabase);
+      service.setMemoizeAcrossQueries(true);
+      for (Limits limits : allLimits()) {
+        for (String origin : AIRPORTS) {
+          for (String destination : AIRPORTS) {
+            if (origin.equals(destination)) {
+              continue;
+            }
+            TreeMap<String, ItinerarySearchResult> results =
+                    service.searchFlexible(limits.query(DATES[1], origin, destination), 1);
+            assertEquals(Arrays.asList(DATES), new ArrayList<String>(results.keySet()));
+            for (Map.Entry<String, ItinerarySearchResult> result : results.entrySet()) {
+              assertEquals(seed + " " + result.getValue().getQuery(),
+                      asString(recursiveSearch(flightDatabase, result.getKey(), origin,
+                              destination, limits)),
+                      asString(result.getValue().getItineraries()));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void searchAfterChangesMatchesRecursiveSearch() {
+    for (long seed : SEEDS) {
+      ArrayList<Flight> flights = schedule(seed);
+      FlightDatabase flightDatabase = new FlightDatabase(flights);
+      ItinerarySearchService service = new ItinerarySearchService(flightDatabase);
+      service.setMemoizeAcrossQueries(true);
+      Random random = new Random(seed);
+      for (int step = 0; step < 20; step++) {
+        // move, remove or add back a flight, then check every route on the first date
+        Flight flight = flights.get(random.nextInt(flights.size()));
+        if (flightDatabase.contains(flight.getFlightnum()) && random.nextBoolean()) {
+          flightDatabase.removeItem(flight);
+        } else {
+          int departure = 6 * 60 + random.nextInt(16 * 60);
+          flightDatabase.addItem(new Flight(flight.getFlightnum(), dateTimeOf(departure),
+                  dateTimeOf(departure + 30 + random.nextInt(4 * 60)), flight.getAirline(),
+                  flight.getOrigin(), flight.getDestination(), flight.getCost(), 5));
+        }
+        for (String origin : AIRPORTS) {
+          for (String destination : AIRPORTS) {
+            if (!origin.equals(destination)) {
+              ItineraryQuery query = new ItineraryQuery(DATES[0], origin, destination);
+              assertEquals(seed + " " + step + " " + query,
+                      asString(recursiveSearch(flightDatabase, DATES[0], origin, destination,
+                              new Limits())),
+                      asString(service.search(query).getItineraries()));
+            }
+          }
+        }
+      }
+    }
+  }
+}